@@ -0,0 +1,290 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * A board shared by many Snakes that all move at the same time. <br/>
+ * Each tick is split into phases. Every phase only reads the state the
+ * tick started with and only writes slots owned by one Snake, so the
+ * phases run in parallel over the Snakes and the result does not depend
+ * on the order in which they are processed:
+ * <ol>
+ * <li>Every living Snake picks the cell in front of its head and claims it.</li>
+ * <li>A Snake dies if it leaves the board, hits a rock, shares its cell with
+ * another head (all of those heads die), swaps cells with another head, or
+ * hits a body. Another Snake's tail that is moving away this tick does not
+ * count as a body, but the Snake's own tail does, as on the GameBoard.</li>
+ * <li>Dead Snakes and moving tails are cleared from the board, then the
+ * survivors' heads are written, and finally eaten food is respawned.</li>
+ * </ol>
+ * Cells are kept in a single int array: a Snake's index, or one of the
+ * negative constants below.
+ */
+class Arena {
+
+    private static final int EMPTY = -1;
+    private static final int ROCK = -2;
+    private static final int FOOD = -3;
+
+    private final int columns;
+    private final int rows;
+    private final int[] cells;
+    private final AtomicIntegerArray claims;
+    private final Random rand;
+
+    private final Player[] players;
+    private final int[] nextCell;
+    private final boolean[] dies;
+    private final boolean[] eats;
+    private int tick = 0;
+
+    /**
+     * Constructs an arena with Snakes, rocks and food at random locations.
+     * @param columns       the width of the board
+     * @param rows          the height of the board
+     * @param snakeCount    the number of Snakes
+     * @param foodQuantity  the number of pieces of food on the board at once
+     * @param rockCount     the number of rocks
+     * @param seed          the seed for placing everything, so games can be replayed
+     */
+    Arena (int columns, int rows, int snakeCount, int foodQuantity, int rockCount, long seed) {
+        this.columns = columns;
+        this.rows = rows;
+        this.cells = new int[columns * rows];
+        this.claims = new AtomicIntegerArray(columns * rows);
+        this.rand = new Random(seed);
+        this.players = new Player[snakeCount];
+        this.nextCell = new int[snakeCount];
+        this.dies = new boolean[snakeCount];
+        this.eats = new boolean[snakeCount];
+
+        if (snakeCount + foodQuantity + rockCount > cells.length) {
+            throw new IllegalArgumentException("Board is too small for " + snakeCount + " snakes");
+        }
+
+        Arrays.fill(cells, EMPTY);
+        for (int i = 0; i < snakeCount; i++) {
+            int cell = randomEmptyCell();
+            players[i] = new Player(new Snake(cell % columns, cell / columns));
+            cells[cell] = i;
+        }
+        for (int i = 0; i < rockCount; i++) {
+            cells[randomEmptyCell()] = ROCK;
+        }
+        for (int i = 0; i < foodQuantity; i++) {
+            cells[randomEmptyCell()] = FOOD;
+        }
+    }
+
+    private int randomEmptyCell () {
+        int cell;
+        do {
+            cell = rand.nextInt(cells.length);
+        } while (cells[cell] != EMPTY);
+        return cell;
+    }
+
+    /**
+     * Sets the direction of a Snake. As on the GameBoard, a Snake longer
+     * than one Square cannot turn 180 degrees.
+     * @param player    the index of the Snake
+     * @param direction the new direction
+     */
+    void setDirection (int player, Direction direction) {
+        Player p = players[player];
+        if (p.snake.getSize() == 1 || direction != opposite(p.lastMove)) {
+            p.movement = direction;
+        }
+    }
+
+    private static Direction opposite (Direction direction) {
+        if (direction == Direction.LEFT) return Direction.RIGHT;
+        if (direction == Direction.RIGHT) return Direction.LEFT;
+        if (direction == Direction.UP) return Direction.DOWN;
+        return Direction.UP;
+    }
+
+    /**
+     * Moves every living Snake one square.
+     */
+    void update () {
+        int n = players.length;
+
+        // Pick and claim the next cell of every living Snake.
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Player p = players[i];
+            dies[i] = false;
+            eats[i] = false;
+            nextCell[i] = -1;
+            if (!p.alive) return;
+
+            Square head = p.snake.getHead();
+            int x = head.getX() + xOffset(p.movement);
+            int y = head.getY() + yOffset(p.movement);
+            if (x < 0 || x >= columns || y < 0 || y >= rows) {
+                dies[i] = true;
+                return;
+            }
+            nextCell[i] = y * columns + x;
+            claims.incrementAndGet(nextCell[i]);
+        });
+
+        // Decide who dies, looking only at the board as it was at the start of the tick.
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int cell = nextCell[i];
+            if (cell < 0) return;
+
+            int occupant = cells[cell];
+            if (claims.get(cell) > 1 || occupant == ROCK) {
+                dies[i] = true;
+            } else if (occupant >= 0 && (occupant == i || !isMovingTail(occupant, cell))) {
+                dies[i] = true;
+            } else if (occupant >= 0 && isHeadOn(i, occupant)) {
+                dies[i] = true; // Two heads swapping cells would pass through each other.
+            } else {
+                eats[i] = occupant == FOOD;
+            }
+        });
+
+        // Clear the dead and the moving tails first, so no head is overwritten.
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Player p = players[i];
+            if (nextCell[i] >= 0) claims.set(nextCell[i], 0);
+            if (!p.alive) return;
+
+            if (dies[i]) {
+                for (Square sq : p.snake) {
+                    cells[sq.getY() * columns + sq.getX()] = EMPTY;
+                }
+            } else if (p.snake.isTailMoving()) {
+                Square last = p.snake.getLast();
+                int cell = last.getY() * columns + last.getX();
+                if (cells[cell] == i) cells[cell] = EMPTY;
+            }
+        });
+
+        // Move the survivors onto their new cells.
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Player p = players[i];
+            if (!p.alive) return;
+            if (dies[i]) {
+                p.alive = false;
+                return;
+            }
+
+            int cell = nextCell[i];
+            p.snake.advance(new Square(Square.Entity.Snake, cell % columns, cell / columns));
+            p.lastMove = p.movement;
+            cells[cell] = i;
+            if (eats[i]) {
+                p.snake.grow();
+                p.score += 10;
+            }
+        });
+
+        // Respawn food in index order so the game stays reproducible.
+        for (int i = 0; i < n; i++) {
+            if (eats[i] && !dies[i]) {
+                cells[randomEmptyCell()] = FOOD;
+            }
+        }
+        tick++;
+    }
+
+    /**
+     * Check to see if a cell holds the end of a Snake that will leave it this tick.
+     */
+    private boolean isMovingTail (int player, int cell) {
+        Player p = players[player];
+        Square last = p.snake.getLast();
+        return p.snake.isTailMoving() && last.getY() * columns + last.getX() == cell;
+    }
+
+    /**
+     * Check to see if two Snakes are each moving onto the other's head.
+     */
+    private boolean isHeadOn (int a, int b) {
+        return nextCell[a] == headCell(b) && nextCell[b] == headCell(a);
+    }
+
+    private int headCell (int player) {
+        Square head = players[player].snake.getHead();
+        return head.getY() * columns + head.getX();
+    }
+
+    private static int xOffset (Direction direction) {
+        if (direction == Direction.LEFT) return -1;
+        if (direction == Direction.RIGHT) return 1;
+        return 0;
+    }
+
+    private static int yOffset (Direction direction) {
+        if (direction == Direction.UP) return -1;
+        if (direction == Direction.DOWN) return 1;
+        return 0;
+    }
+
+    int getSnakeCount () {
+        return players.length;
+    }
+
+    Snake getSnake (int player) {
+        return players[player].snake;
+    }
+
+    boolean isAlive (int player) {
+        return players[player].alive;
+    }
+
+    int getScore (int player) {
+        return players[player].score;
+    }
+
+    int getTick () {
+        return tick;
+    }
+
+    /**
+     * Get the number of Snakes still alive.
+     * @return  the number of living Snakes
+     */
+    int getAliveCount () {
+        int count = 0;
+        for (Player p : players) {
+            if (p.alive) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get the locations of all the food on the board.
+     * @return  a new list of food Squares
+     */
+    List<Square> getFood () {
+        List<Square> food = new ArrayList<>();
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell] == FOOD) {
+                food.add(new Square(Square.Entity.Food, cell % columns, cell / columns));
+            }
+        }
+        return food;
+    }
+
+    /**
+     * One Snake in the arena and the state the GameBoard keeps for its single Snake.
+     */
+    private static class Player {
+        private final Snake snake;
+        private Direction movement = Direction.DOWN;
+        private Direction lastMove = movement;
+        private boolean alive = true;
+        private int score = 0;
+
+        private Player (Snake snake) {
+            this.snake = snake;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Paints a board on several cores at once. <br/>
+ * The board is cut into horizontal bands of whole rows. Each band is painted
+ * by its own fork-join task, with its own Graphics, into its own slice of one
+ * shared image, so the tasks never touch the same pixels. Painting a Square
+ * never reaches outside its row, so a band only has to paint what lies in
+ * its rows. The finished image is then drawn to the screen in one go. <br/>
+ * There are a couple of bands per pool thread, so a band crowded with Snake
+ * does not leave the other threads idle. The image is reused for every frame,
+ * so render() must not be called again until the last image has been drawn.
+ */
+class BandedRenderer {
+
+    private static final int WIDTH = Properties.SQUARE_SIZE * Properties.BOARD_COLUMNS;
+    private static final int HEIGHT = Properties.SQUARE_SIZE * Properties.BOARD_ROWS;
+
+    private final ForkJoinPool pool;
+    private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final int[] firstRows;
+    private final BufferedImage[] slices;
+
+    /**
+     * Constructs a renderer that paints on the common fork-join pool.
+     */
+    BandedRenderer () {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a renderer.
+     * @param pool  the pool to paint on
+     */
+    BandedRenderer (ForkJoinPool pool) {
+        this.pool = pool;
+        int bands = Math.max(1, Math.min(Properties.BOARD_ROWS, pool.getParallelism() * 2));
+
+        // Band b covers rows firstRows[b] up to firstRows[b + 1] - 1.
+        firstRows = new int[bands + 1];
+        slices = new BufferedImage[bands];
+        for (int b = 0; b <= bands; b++) {
+            firstRows[b] = b * Properties.BOARD_ROWS / bands;
+        }
+        for (int b = 0; b < bands; b++) {
+            int top = firstRows[b] * Properties.SQUARE_SIZE;
+            int height = (firstRows[b + 1] - firstRows[b]) * Properties.SQUARE_SIZE;
+            slices[b] = image.getSubimage(0, top, WIDTH, height); // Shares the image's pixels.
+        }
+    }
+
+    /**
+     * Paints a snapshot of the board, background included.
+     * @param gameBoard the board that does the painting
+     * @param board     the snapshot to paint
+     * @return          the painted image, valid until the next call
+     */
+    BufferedImage render (GameBoard gameBoard, BoardView board) {
+        pool.invoke(new Bands(gameBoard, board, 0, slices.length));
+        return image;
+    }
+
+    int getBands () {
+        return slices.length;
+    }
+
+    /**
+     * Paints a range of bands, splitting it in half until only one band is left.
+     */
+    private class Bands extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GameBoard gameBoard;
+        private final BoardView board;
+        private final int from;
+        private final int to;
+
+        Bands (GameBoard gameBoard, BoardView board, int from, int to) {
+            this.gameBoard = gameBoard;
+            this.board = board;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute () {
+            if (to - from > 1) {
+                int middle = (from + to) / 2;
+                invokeAll(new Bands(gameBoard, board, from, middle), new Bands(gameBoard, board, middle, to));
+                return;
+            }
+
+            BufferedImage slice = slices[from];
+            Graphics2D g = slice.createGraphics();
+            g.setColor(Properties.backgroundColor);
+            g.fillRect(0, 0, slice.getWidth(), slice.getHeight());
+            g.translate(0, -firstRows[from] * Properties.SQUARE_SIZE);
+            gameBoard.paint(g, board, firstRows[from], firstRows[from + 1] - 1);
+            g.dispose();
+        }
+    }
+
+    /**
+     * Times frames of a board covered in Snake with 1, 2, 4... threads, up to
+     * the number of cores.
+     * Arguments: [frames]
+     */
+    public static void main (String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        // A Snake winding through every row of the board.
+        List<Square> body = new ArrayList<>();
+        for (int y = 0; y < Properties.BOARD_ROWS; y++) {
+            for (int i = 0; i < Properties.BOARD_COLUMNS; i++) {
+                int x = y % 2 == 0 ? i : Properties.BOARD_COLUMNS - 1 - i;
+                body.add(new Square(Square.Entity.Snake, x, y));
+            }
+        }
+        GameBoard gameBoard = new GameBoard();
+        gameBoard.restore(1, body, body.size(), 0, Direction.RIGHT, Direction.RIGHT,
+                new ArrayList<>(), new Square(Square.Entity.Poison, 0, 0), false);
+        BoardView board = gameBoard.view();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            BandedRenderer renderer = new BandedRenderer(pool);
+            for (int i = 0; i < frames / 4; i++) {
+                renderer.render(gameBoard, board); // Warm up.
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                renderer.render(gameBoard, board);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / frames;
+            System.out.printf("%d threads, %d bands: %.2f ms per frame%n", threads, renderer.getBands(), millis);
+            pool.shutdown();
+        }
+    }
+}
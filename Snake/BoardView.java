@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only snapshot of a GameBoard, handed to bot strategies.
+ * The lists are copied when the snapshot is taken, so they do not change
+ * when the game moves on.
+ */
+public final class BoardView {
+
+    private final List<Square> snake;
+    private final List<Square> food;
+    private final Square poison;
+    private final List<Square> rocks;
+    private final Direction movement;
+    private final int score;
+    private final int[] reachable;
+
+    BoardView (Iterable<Square> snake, List<Square> food, Square poison, Square[] rocks,
+            Direction movement, int score, int[] reachable) {
+        this.snake = copyOf(snake);
+        this.food = List.copyOf(food);
+        this.poison = poison;
+        this.rocks = List.copyOf(Arrays.asList(rocks));
+        this.movement = movement;
+        this.score = score;
+        this.reachable = reachable;
+    }
+
+    private static List<Square> copyOf (Iterable<Square> squares) {
+        ArrayList<Square> list = new ArrayList<>();
+        for (Square sq : squares) {
+            list.add(sq);
+        }
+        return List.copyOf(list);
+    }
+
+    /**
+     * Get the Squares of the Snake, head first.
+     * @return  the body of the Snake
+     */
+    public List<Square> getSnake () {
+        return snake;
+    }
+
+    public Square getHead () {
+        return snake.get(0);
+    }
+
+    public List<Square> getFood () {
+        return food;
+    }
+
+    public Square getPoison () {
+        return poison;
+    }
+
+    public List<Square> getRocks () {
+        return rocks;
+    }
+
+    /**
+     * Get the direction the Snake is currently moving in.
+     * @return  the current direction
+     */
+    public Direction getMovement () {
+        return movement;
+    }
+
+    public int getScore () {
+        return score;
+    }
+
+    /**
+     * Get the number of free Squares the Snake could still reach after moving
+     * in a direction. A small number means the move would trap the Snake.
+     * Only snapshots taken for a bot have these numbers.
+     * @param direction the direction of the move
+     * @return          the number of reachable free Squares, 0 if the move is fatal
+     * @throws IllegalStateException    if the snapshot was not taken for a bot
+     */
+    public int getReachable (Direction direction) {
+        if (reachable == null) throw new IllegalStateException("Snapshot was taken without reachability");
+        return reachable[direction.ordinal()];
+    }
+
+    public int getColumns () {
+        return Properties.BOARD_COLUMNS;
+    }
+
+    public int getRows () {
+        return Properties.BOARD_ROWS;
+    }
+}
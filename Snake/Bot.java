@@ -0,0 +1,230 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a Strategy on a shared thread pool with a hard time budget per tick,
+ * and keeps latency numbers for it. <br/>
+ * If the Strategy misses the budget, throws, or is still busy with an earlier
+ * tick, the Snake keeps its previous direction. A Bot never has more than one
+ * call in flight, so a Strategy that hangs ties up at most one pool thread
+ * and cannot hold up the other bots. The pool grows with the number of busy
+ * bots, so that holds however few cores there are.
+ */
+class Bot {
+
+    // Threads are reused, but never shared out so thinly that a hung Strategy blocks another Bot.
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Bot strategy");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Strategy strategy;
+    private final long budgetNanos;
+    private final URLClassLoader loader;
+    private Future<Direction> pending;
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private long submittedAt;
+
+    private long calls = 0;
+    private long misses = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    /**
+     * Wrap a Strategy.
+     * @param name          the name used when reporting latency
+     * @param strategy      the Strategy to run
+     * @param budgetMillis  how long the Strategy may take each tick
+     */
+    Bot (String name, Strategy strategy, long budgetMillis) {
+        this(name, strategy, budgetMillis, null);
+    }
+
+    private Bot (String name, Strategy strategy, long budgetMillis, URLClassLoader loader) {
+        this.name = name;
+        this.strategy = strategy;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.loader = loader;
+    }
+
+    /**
+     * Load a Strategy class from a jar.
+     * @param jar           the jar containing the Strategy
+     * @param className     the fully qualified name of a Strategy with a no-arg constructor
+     * @param budgetMillis  how long the Strategy may take each tick
+     * @return              the Bot running the Strategy
+     * @throws IOException  if the jar or class cannot be loaded
+     */
+    static Bot load (File jar, String className, long budgetMillis) throws IOException {
+        URLClassLoader loader = new URLClassLoader(new URL[] {jar.toURI().toURL()},
+                Bot.class.getClassLoader());
+        try {
+            Class<? extends Strategy> type = loader.loadClass(className).asSubclass(Strategy.class);
+            return new Bot(className, type.getDeclaredConstructor().newInstance(), budgetMillis, loader);
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            loader.close();
+            throw new IOException("Cannot load strategy " + className + " from " + jar, ex);
+        }
+    }
+
+    /**
+     * Load the Strategy named by the snake.bot (jar) and snake.bot.class system
+     * properties, with the time budget from snake.bot.budget (20 ms by default).
+     * @return              the Bot, or null if the properties are not set
+     * @throws IOException  if the jar or class cannot be loaded
+     */
+    static Bot fromProperties () throws IOException {
+        String jar = System.getProperty("snake.bot");
+        String className = System.getProperty("snake.bot.class");
+        if (jar == null || className == null) return null;
+
+        return load(new File(jar), className, Long.getLong("snake.bot.budget", 20));
+    }
+
+    /**
+     * Ask the Strategy for its next move, waiting no longer than the budget.
+     * @param board     the snapshot to give the Strategy
+     * @param previous  the direction to keep if the Strategy does not answer in time
+     * @return          the direction the Snake should move in
+     */
+    Direction decide (BoardView board, Direction previous) {
+        submit(board);
+        return collect(submittedAt + budgetNanos, previous);
+    }
+
+    /**
+     * Ask several Strategies for their next moves at once. Every call is
+     * started before any is waited for, so the tick waits for the slowest
+     * budget rather than the sum of them.
+     * @param bots      the Bots to ask
+     * @param boards    the snapshot for each Bot
+     * @param previous  the direction each Snake keeps if its Bot does not answer in time
+     * @return          the direction each Snake should move in
+     */
+    static Direction[] decideAll (Bot[] bots, BoardView[] boards, Direction[] previous) {
+        long start = System.nanoTime();
+        for (int i = 0; i < bots.length; i++) {
+            bots[i].submit(boards[i]);
+        }
+        Direction[] next = new Direction[bots.length];
+        for (int i = 0; i < bots.length; i++) {
+            next[i] = bots[i].collect(start + bots[i].budgetNanos, previous[i]);
+        }
+        return next;
+    }
+
+    /**
+     * Starts the Strategy on a snapshot, unless it is still running from an
+     * earlier tick. The task itself clears the busy flag when the Strategy
+     * returns, so one that ignores being cancelled still only ever holds one
+     * pool thread. If the task is cancelled before a pool thread gets to it,
+     * the Strategy never runs and the cancel clears the flag instead.
+     */
+    private void submit (BoardView board) {
+        submittedAt = System.nanoTime();
+        if (!busy.compareAndSet(false, true)) {
+            pending = null; // Still working on an earlier tick.
+            return;
+        }
+
+        // Whichever of the Strategy and the cancel claims the call first clears the flag.
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<Direction> call = new FutureTask<Direction>(() -> {
+            if (!claimed.compareAndSet(false, true)) return null;
+            try {
+                return strategy.nextMove(board);
+            } finally {
+                busy.set(false);
+            }
+        }) {
+            @Override
+            protected void done () {
+                if (claimed.compareAndSet(false, true)) busy.set(false);
+            }
+        };
+        POOL.execute(call);
+        pending = call;
+    }
+
+    /**
+     * Waits for the answer to the last submit() until a deadline.
+     */
+    private Direction collect (long deadline, Direction previous) {
+        calls++;
+        if (pending == null) {
+            misses++;
+            return previous;
+        }
+
+        Direction next = null;
+        try {
+            next = pending.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            pending.cancel(true);
+            misses++;
+        } catch (ExecutionException ex) {
+            ex.getCause().printStackTrace();
+            misses++;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        pending = null;
+
+        long elapsed = System.nanoTime() - submittedAt;
+        totalNanos += elapsed;
+        maxNanos = Math.max(maxNanos, elapsed);
+
+        return next != null ? next : previous;
+    }
+
+    /**
+     * Lets go of the jar the Strategy was loaded from, if any. A call still
+     * in flight is left to finish.
+     */
+    void close () {
+        if (loader == null) return;
+        try {
+            loader.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    long getCalls () {
+        return calls;
+    }
+
+    long getMisses () {
+        return misses;
+    }
+
+    /**
+     * Get the average time spent waiting for the Strategy.
+     * @return  the mean latency in nanoseconds
+     */
+    long getMeanNanos () {
+        return calls == 0 ? 0 : totalNanos / calls;
+    }
+
+    long getMaxNanos () {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString () {
+        return name + ": " + calls + " calls, " + misses + " misses, mean "
+                + getMeanNanos() / 1000 + "us, max " + maxNanos / 1000 + "us";
+    }
+}
@@ -0,0 +1,235 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a game without a window and saves every tick as an image. <br/>
+ * Each tick is painted with GameBoard.paint into an off-screen image on the
+ * calling thread. Encoding is the slow part, so frames are handed to a pool
+ * of encoder threads. At most a fixed number of frames may be waiting, which
+ * bounds memory: the game is paused while the queue is full. Frames are
+ * collected in tick order, so an animated GIF comes out in the right order
+ * even though its frames were prepared in parallel.
+ */
+class FrameExporter {
+
+    private static final int WIDTH = Properties.SQUARE_SIZE * Properties.BOARD_COLUMNS;
+    private static final int HEIGHT = Properties.SQUARE_SIZE * Properties.BOARD_ROWS;
+
+    private final File directory;
+    private final Format format;
+    private final ExecutorService encoders;
+    private final BlockingQueue<Future<BufferedImage>> frames;
+
+    /**
+     * Constructs an exporter.
+     * @param directory     the directory to write into, created if missing
+     * @param format        PNG for one file per tick, GIF for a single animation
+     * @param threads       the number of encoder threads
+     * @param queueSize     the number of frames that may be waiting to be encoded
+     */
+    FrameExporter (File directory, Format format, int threads, int queueSize) {
+        this.directory = directory;
+        this.format = format;
+        this.encoders = Executors.newFixedThreadPool(threads);
+        this.frames = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Runs the board for a number of ticks, or until the game is over, and
+     * saves a frame for each tick.
+     * @param board     the board to run
+     * @param bot       the Bot that steers the Snake, or null to let it go straight
+     * @param ticks     the maximum number of ticks
+     * @return          the number of frames written
+     * @throws IOException  if a frame cannot be written
+     */
+    int export (GameBoard board, Bot bot, int ticks) throws IOException {
+        directory.mkdirs();
+        Collector collector = new Collector();
+        Thread thread = new Thread(collector, "Frame collector");
+        thread.start();
+
+        int frame = 0;
+        try {
+            while (frame < ticks && !board.isGameOver() && collector.error == null) {
+                BufferedImage image = render(board);
+                int number = frame++;
+                enqueue(encoders.submit(() -> encode(image, number)), thread);
+
+                if (bot != null) {
+                    board.setDirection(bot.decide(board.botView(), board.getMovement()));
+                }
+                board.update();
+            }
+            // The loop stops as soon as the Snake dies, before the death is rendered.
+            if (board.isGameOver() && frame < ticks && collector.error == null) {
+                BufferedImage image = render(board);
+                int number = frame++;
+                enqueue(encoders.submit(() -> encode(image, number)), thread);
+            }
+            enqueue(encoders.submit(() -> null), thread); // Tells the collector to stop.
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            thread.interrupt();
+        } finally {
+            encoders.shutdown();
+        }
+
+        if (collector.error != null) {
+            throw new IOException("Could not export frames", collector.error);
+        }
+        return frame;
+    }
+
+    /**
+     * Waits for room in the queue, giving up if the collector has stopped.
+     */
+    private void enqueue (Future<BufferedImage> frame, Thread collector) throws InterruptedException {
+        while (!frames.offer(frame, 10, TimeUnit.MILLISECONDS)) {
+            if (!collector.isAlive()) return;
+        }
+    }
+
+    private BufferedImage render (GameBoard board) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Properties.backgroundColor);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        board.paint(g);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Runs on an encoder thread. A PNG is written straight away; a GIF frame
+     * is reduced to an indexed palette here and written later, in order.
+     */
+    private BufferedImage encode (BufferedImage image, int number) throws IOException {
+        if (format == Format.PNG) {
+            ImageIO.write(image, "png", new File(directory, String.format("frame_%05d.png", number)));
+            return image;
+        }
+
+        BufferedImage indexed = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED);
+        Graphics2D g = indexed.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return indexed;
+    }
+
+    /**
+     * Takes finished frames off the queue in tick order. For a GIF it also
+     * appends each frame to the animation.
+     */
+    private class Collector implements Runnable {
+
+        private volatile Exception error;
+
+        public void run () {
+            ImageWriter writer = null;
+            ImageOutputStream output = null;
+
+            try {
+                while (true) {
+                    BufferedImage image = frames.take().get();
+                    if (image == null) break;
+                    if (format == Format.PNG) continue;
+
+                    if (writer == null) {
+                        writer = ImageIO.getImageWritersByFormatName("gif").next();
+                        output = ImageIO.createImageOutputStream(new File(directory, "game.gif"));
+                        writer.setOutput(output);
+                        writer.prepareWriteSequence(null);
+                    }
+                    writer.writeToSequence(new IIOImage(image, null, gifMetadata(writer, image)), null);
+                }
+
+                if (writer != null) writer.endWriteSequence();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | ExecutionException ex) {
+                error = ex;
+            } finally {
+                if (writer != null) writer.dispose();
+                try {
+                    if (output != null) output.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the frame delay to match the game's 15 ticks per second, and makes the GIF loop.
+     */
+    private static IIOMetadata gifMetadata (ImageWriter writer, BufferedImage image) throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), null);
+        String name = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(name);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", "7");
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+        IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+        loop.setAttribute("applicationID", "NETSCAPE");
+        loop.setAttribute("authenticationCode", "2.0");
+        loop.setUserObject(new byte[] {1, 0, 0});
+        extensions.appendChild(loop);
+        root.appendChild(extensions);
+
+        metadata.setFromTree(name, root);
+        return metadata;
+    }
+
+    /**
+     * Exports a game from the command line, without a display:
+     * <pre>java -Djava.awt.headless=true FrameExporter &lt;directory&gt; &lt;png|gif&gt; &lt;ticks&gt;</pre>
+     * The snake.bot and snake.bot.class properties choose a bot to steer, as for Window.
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: FrameExporter <directory> <png|gif> <ticks>");
+            return;
+        }
+
+        Bot bot = Bot.fromProperties();
+        int threads = Runtime.getRuntime().availableProcessors();
+        FrameExporter exporter = new FrameExporter(new File(args[0]),
+                Format.valueOf(args[1].toUpperCase()), threads, threads * 4);
+
+        long start = System.nanoTime();
+        int frames = exporter.export(new GameBoard(), bot, Integer.parseInt(args[2]));
+        if (bot != null) bot.close();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Exported " + frames + " frames in " + millis + " ms");
+    }
+
+    enum Format {
+        PNG,
+        GIF
+    }
+}
@@ -2,8 +2,10 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 import java.io.File;
 import java.io.IOException;
 import java.util.Random;
@@ -23,18 +25,26 @@ import javax.imageio.ImageIO;
  */
 class GameBoard {
 	private static final Random RAND = new Random();
+	private final Random random = new Random();
+	private long seed;
     private List<Square> foodList;
-    private final int FOOD_QUANTITY = 2; 
+    static final int FOOD_QUANTITY = 2;
     private Square poison;
     private Snake snake;
-    private Window window;
-    private Square[] rocks = new Square[5];
+    private static final int ROCKS = 5;
+    private Square[] rocks = new Square[ROCKS];
     private int score = 0;
-
-	private BufferedImage left;
-	private BufferedImage right;
-	private BufferedImage up;
-	private BufferedImage down;
+    private volatile boolean gameOver = false;
+    private int tick = 0;
+    private Telemetry telemetry;
+    private Rewind rewind;
+    private Reachability reachability;
+
+	// Shared by every board, so each new board does not decode them again.
+	private static BufferedImage left;
+	private static BufferedImage right;
+	private static BufferedImage up;
+	private static BufferedImage down;
 	
 	
     /**
@@ -47,25 +57,261 @@ class GameBoard {
     /**
      * Constructs the board.
      */
-    GameBoard (Window window) {
+    GameBoard () {
         this.snake = new Snake();
 		foodList = new ArrayList<Square>();
+    	addEyeMovement();
+        reset();
+    }
+
+    /**
+     * Starts a new game on this board. The Snake, the food list and the rock
+     * array are reset in place and the eye images are kept, so a restart
+     * does not have to reload anything from disk.
+     */
+    void reset () {
+        reset(RAND.nextLong());
+    }
+
+    /**
+     * Starts a new game whose food, poison and rocks all follow from a seed,
+     * so another board started with the same seed and steered the same way
+     * plays out exactly the same.
+     * @param seed      the seed of the game
+     */
+    void reset (long seed) {
+        this.seed = seed;
+        random.setSeed(seed);
+        snake.reset(Properties.START_X, Properties.START_Y);
+        foodList.clear();
 		for (int i = 0; i < FOOD_QUANTITY; i++) {
 			newFood();
 		}
-    	addEyeMovement();
         newPoison();
         createRocks();
+        score = 0;
+        tick = 0;
+        movement = Direction.DOWN;
+        lastMove = movement;
+        gameOver = false;
+        if (rewind != null) rewind.clear();
+        if (reachability != null) reachability.reset(snake, rocks);
         update();
-        this.window = window;
     }
 
     /**
-     * Move the Snake.
+     * Move the Snake. Does nothing once the game is over.
      */
     void update () {
+        if (gameOver) return;
+        int scoreBefore = score;
+        Square headBefore = snake.getHead();
+        int lengthBefore = snake.getLength();
+        // Whatever spawns on this tick depends only on the seed and the tick, so replays match.
+        random.setSeed(seed ^ (tick + 1) * 0x9E3779B97F4A7C15L);
         moveSnake();
-        
+        tick++;
+
+        if (telemetry != null) {
+            recordTick(score - scoreBefore);
+        }
+
+        // A new head is a new Square object; the rest came off the end.
+        Square head = snake.getHead() != headBefore ? snake.getHead() : null;
+        int removed = lengthBefore + (head != null ? 1 : 0) - snake.getLength();
+        if (rewind != null) {
+            rewind.record(tick, snake, head, removed, score, movement, lastMove, foodList, poison, gameOver);
+        }
+        if (reachability != null) {
+            reachability.moved(head, removed);
+        }
+    }
+
+    /**
+     * Get the number of free Squares the Snake could still reach after moving
+     * one Square in a direction, counting the Square its tail is about to
+     * leave. A move that would kill the Snake reaches nothing.
+     * @param direction the direction of the move
+     * @return          the number of reachable free Squares
+     */
+    int reachableAfter (Direction direction) {
+        if (reachability == null) {
+            reachability = new Reachability(Properties.BOARD_COLUMNS, Properties.BOARD_ROWS);
+            reachability.reset(snake, rocks);
+        }
+        return reachability.reachableAfter(direction, snake.isTailMoving());
+    }
+
+    /**
+     * Creates a rewind buffer sized from Properties, with room for this board's food.
+     * @return  the buffer
+     */
+    static Rewind createRewind () {
+        return new Rewind(Properties.REWIND_CAPACITY, Properties.REWIND_KEYFRAME, FOOD_QUANTITY);
+    }
+
+    /**
+     * Remembers recent ticks in the specified buffer so the game can be rewound.
+     * @param rewind    the buffer to record to, or null to stop recording
+     */
+    void setRewind (Rewind rewind) {
+        this.rewind = rewind;
+    }
+
+    /**
+     * Goes back a number of ticks, or as far back as the rewind buffer remembers.
+     * @param ticks     the number of ticks to go back
+     * @return          false if there is no rewind buffer or nothing recorded
+     */
+    boolean rewind (int ticks) {
+        if (rewind == null || rewind.getOldestTick() < 0) return false;
+        return rewind.seek(this, Math.max(tick - ticks, rewind.getOldestTick()));
+    }
+
+    /**
+     * Puts the board back into an earlier state. Used by Rewind.
+     */
+    void restore (int tick, List<Square> body, int size, int score, Direction movement,
+            Direction lastMove, List<Square> food, Square poison, boolean gameOver) {
+        snake.restore(body, size);
+        foodList.clear();
+        foodList.addAll(food);
+        this.poison = poison;
+        this.tick = tick;
+        this.score = score;
+        this.movement = movement;
+        this.lastMove = lastMove;
+        this.gameOver = gameOver;
+        if (reachability != null) reachability.reset(snake, rocks);
+    }
+
+    int getTick () {
+        return tick;
+    }
+
+    /**
+     * Writes the state of the game into a buffer, four bytes per Square. The
+     * rewind history and the telemetry sink are not included.
+     * @param buffer    the buffer to write to
+     */
+    void encode (ByteBuffer buffer) {
+        buffer.putLong(seed).putInt(tick).putInt(score).putInt(snake.getSize());
+        buffer.put((byte) movement.ordinal()).put((byte) lastMove.ordinal()).put((byte) (gameOver ? 1 : 0));
+        buffer.putInt(snake.getLength());
+        for (Square sq : snake) {
+            putSquare(buffer, sq);
+        }
+        buffer.putShort((short) foodList.size());
+        for (Square food : foodList) {
+            putSquare(buffer, food);
+        }
+        putSquare(buffer, poison);
+        for (Square rock : rocks) {
+            putSquare(buffer, rock);
+        }
+    }
+
+    /**
+     * Get the number of bytes encode() will write.
+     * @return  the size of the encoded board
+     */
+    int getEncodedSize () {
+        return 29 + 4 * (snake.getLength() + foodList.size() + 1 + rocks.length);
+    }
+
+    /**
+     * Get the most bytes encode() can write: a Snake filling the board, plus a
+     * head off the edge, and every piece of food.
+     * @return  the size of the largest encoded board
+     */
+    static int getMaxEncodedSize () {
+        return 29 + 4 * (Properties.BOARD_COLUMNS * Properties.BOARD_ROWS + 1 + FOOD_QUANTITY + 1 + ROCKS);
+    }
+
+    /**
+     * Creates a board from the output of encode().
+     * @param buffer    the buffer to read from
+     * @return          the board
+     */
+    static GameBoard decode (ByteBuffer buffer) {
+        GameBoard board = new GameBoard();
+        board.load(buffer);
+        return board;
+    }
+
+    /**
+     * Replaces the state of this board with the output of encode().
+     * @param buffer    the buffer to read from
+     */
+    void load (ByteBuffer buffer) {
+        long seed = buffer.getLong();
+        int tick = buffer.getInt();
+        int score = buffer.getInt();
+        int size = buffer.getInt();
+        Direction[] directions = Direction.values();
+        Direction movement = directions[buffer.get()];
+        Direction lastMove = directions[buffer.get()];
+        boolean gameOver = buffer.get() == 1;
+
+        List<Square> body = new ArrayList<>();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            body.add(getSquare(buffer, Square.Entity.Snake));
+        }
+        List<Square> food = new ArrayList<>();
+        for (int i = buffer.getShort(); i > 0; i--) {
+            food.add(getSquare(buffer, Square.Entity.Food));
+        }
+        Square poison = getSquare(buffer, Square.Entity.Poison);
+        for (int i = 0; i < rocks.length; i++) {
+            rocks[i] = getSquare(buffer, Square.Entity.Rock);
+        }
+
+        this.seed = seed;
+        restore(tick, body, size, score, movement, lastMove, food, poison, gameOver);
+    }
+
+    // Shorts, so boards wider than a byte fit. The head of a dead Snake can be
+    // just off the board, so coordinates are signed.
+    private static void putSquare (ByteBuffer buffer, Square sq) {
+        buffer.putShort((short) sq.getX()).putShort((short) sq.getY());
+    }
+
+    private static Square getSquare (ByteBuffer buffer, Square.Entity entity) {
+        return new Square(entity, buffer.getShort(), buffer.getShort());
+    }
+
+    /**
+     * Sends a row for every tick to the specified sink, or stops recording if null.
+     * @param telemetry the sink to record to
+     */
+    void setTelemetry (Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    private void recordTick (int scoreDelta) {
+        Telemetry.Event event = Telemetry.Event.Move;
+        if (gameOver) {
+            event = Telemetry.Event.Death;
+        } else if (scoreDelta > 0) {
+            event = Telemetry.Event.Food;
+        } else if (scoreDelta < 0) {
+            event = Telemetry.Event.Poison;
+        }
+
+        Square head = snake.getHead();
+        telemetry.record(tick, head.getX(), head.getY(), movement, snake.getSize(), scoreDelta, event);
+    }
+
+    /**
+     * Check to see if the Snake has died.
+     * @return  true if the game is over
+     */
+    boolean isGameOver () {
+        return gameOver;
+    }
+
+    private void endGame () {
+        gameOver = true;
     }
 
     /**
@@ -73,8 +319,8 @@ class GameBoard {
      */
     private void newFood () {
         	Square square = new Square(Square.Entity.Food,
-		RAND.nextInt(Properties.BOARD_COLUMNS),
-		RAND.nextInt(Properties.BOARD_ROWS));
+		random.nextInt(Properties.BOARD_COLUMNS),
+		random.nextInt(Properties.BOARD_ROWS));
         
         	if (snake.contains(square)) {
     			newFood();
@@ -91,8 +337,8 @@ class GameBoard {
 	private void newPoison() {
 	
 		poison = new Square(Square.Entity.Poison, 
-				RAND.nextInt(Properties.BOARD_COLUMNS), 
-				RAND.nextInt(Properties.BOARD_ROWS));
+				random.nextInt(Properties.BOARD_COLUMNS), 
+				random.nextInt(Properties.BOARD_ROWS));
 		
 		//If poison is spawned inside the snake, inside the food or inside a rock try spawning elsewhere.
 		// TODO: poison never .equals() rocks
@@ -105,12 +351,11 @@ class GameBoard {
 	 * Creates rocks at random locations.
 	 */
 	private void createRocks() {
-		Random rand = new Random();
 		Square rock;
 		for (int i = 0; i < 5; i++) {
 			do {
-				rock = new Square(Square.Entity.Rock, rand.nextInt(Properties.BOARD_COLUMNS),
-						rand.nextInt(Properties.BOARD_ROWS));
+				rock = new Square(Square.Entity.Rock, random.nextInt(Properties.BOARD_COLUMNS),
+						random.nextInt(Properties.BOARD_ROWS));
 			} while (snake.contains(rock) || foodList.contains(rock));
 
 			rocks[i] = rock;
@@ -156,6 +401,52 @@ class GameBoard {
         }
     }
 
+    /**
+     * Sets the direction of the Snake, following the same rules as the arrow keys.
+     * @param direction the new direction
+     */
+    void setDirection (Direction direction) {
+        if (direction == Direction.LEFT) {
+            directionLeft();
+        } else if (direction == Direction.RIGHT) {
+            directionRight();
+        } else if (direction == Direction.UP) {
+            directionUp();
+        } else if (direction == Direction.DOWN) {
+            directionDown();
+        }
+    }
+
+    /**
+     * Get the direction the Snake will move in on the next tick.
+     * @return  the current direction
+     */
+    Direction getMovement () {
+        return movement;
+    }
+
+    /**
+     * Takes a read-only snapshot of the board, for painting.
+     * @return  the snapshot
+     */
+    BoardView view () {
+        return new BoardView(snake, foodList, poison, rocks, movement, score, null);
+    }
+
+    /**
+     * Takes a read-only snapshot of the board for a bot strategy, including
+     * how much room each move leaves. The first call starts tracking the
+     * free Squares, which costs a little on every tick from then on.
+     * @return  the snapshot
+     */
+    BoardView botView () {
+        int[] reachable = new int[4];
+        for (Direction d : Direction.values()) {
+            reachable[d.ordinal()] = reachableAfter(d);
+        }
+        return new BoardView(snake, foodList, poison, rocks, movement, score, reachable);
+    }
+
     /**
      * Moves the Snake one square, according to its direction.
      */
@@ -176,7 +467,8 @@ class GameBoard {
 
     private void moveSnakeLeft () {
         if (!snake.moveLeft()) { // Check to see if the Snake has run into itself.
-        	window.gameOverDialog();
+        	endGame();
+        	return;
         }
         checkBounds();
         checkRock();
@@ -187,7 +479,8 @@ class GameBoard {
 
     private void moveSnakeRight () {
         if (!snake.moveRight()) { // Check to see if the Snake has run into itself.
-        	window.gameOverDialog();
+        	endGame();
+        	return;
         }
         checkBounds();
         checkRock();
@@ -198,7 +491,8 @@ class GameBoard {
 
     private void moveSnakeUp () {
         if (!snake.moveUp()) { // Check to see if the Snake has run into itself.
-        	window.gameOverDialog();
+        	endGame();
+        	return;
         }
         checkBounds();
         checkRock();
@@ -209,7 +503,8 @@ class GameBoard {
 
     private void moveSnakeDown () {
         if (!snake.moveDown()) { // Check to see if the Snake has run into itself.
-        	window.gameOverDialog();
+        	endGame();
+        	return;
         }
         checkBounds();
         checkRock();
@@ -229,7 +524,7 @@ class GameBoard {
         boolean outOfBounds = tooFarLeft || tooFarRight || tooFarUp || tooFarDown;
 
         if (outOfBounds) {
-        	window.gameOverDialog();
+        	endGame();
         }
     }
     
@@ -242,7 +537,7 @@ class GameBoard {
 		boolean hitRock5 = sq.equals(rocks[4]);
 
 		if (hitRock1 || hitRock2 || hitRock3 || hitRock4 || hitRock5) {
-			window.gameOverDialog();
+			endGame();
 		}
 	}
 
@@ -257,7 +552,7 @@ class GameBoard {
 		if(isSnakeOnPoison()) {
 			cutSnake();
 			if(snake.getSize() == 0) {
-				window.gameOverDialog();
+				endGame();
 			}
 			else {
 				newPoison();
@@ -299,23 +594,86 @@ class GameBoard {
 		score -= 10;
 	}
 
+    /**
+     * Writes what is on every Square into an array, row by row, as
+     * Square.Entity ordinals. For renderers that do not use Graphics.
+     * @param cells     an array with one entry per Square on the board
+     */
+    void fillEntities (byte[] cells) {
+        Arrays.fill(cells, (byte) Square.Entity.Empty.ordinal());
+        for (Square sq : snake) {
+            setEntity(cells, sq, Square.Entity.Snake);
+        }
+        for (Square food : foodList) {
+            setEntity(cells, food, Square.Entity.Food);
+        }
+        setEntity(cells, poison, Square.Entity.Poison);
+        for (Square rock : rocks) {
+            setEntity(cells, rock, Square.Entity.Rock);
+        }
+    }
+
+    private void setEntity (byte[] cells, Square sq, Square.Entity entity) {
+        boolean onBoard = sq.getX() >= 0 && sq.getX() < Properties.BOARD_COLUMNS
+                && sq.getY() >= 0 && sq.getY() < Properties.BOARD_ROWS;
+        if (onBoard) {
+            cells[sq.getY() * Properties.BOARD_COLUMNS + sq.getX()] = (byte) entity.ordinal();
+        }
+    }
+
+    /**
+     * Get the head of the Snake.
+     * @return  the first Square in the Snake
+     */
+    Square getHead () {
+        return snake.getHead();
+    }
+
     public void paint (Graphics graphics) {
+        paint(graphics, view());
+    }
+
+    /**
+     * Paints a snapshot of the board, which may be from an earlier tick. This
+     * lets the game loop keep running while a frame is being painted.
+     * @param graphics  where to paint
+     * @param board     the snapshot to paint
+     */
+    void paint (Graphics graphics, BoardView board) {
+        paint(graphics, board, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Paints the parts of a snapshot that lie in a range of rows. Nothing
+     * painted for a Square reaches outside it, so bands of rows can be
+     * painted separately and side by side.
+     * @param graphics  where to paint
+     * @param board     the snapshot to paint
+     * @param firstRow  the first row to paint
+     * @param lastRow   the last row to paint
+     */
+    void paint (Graphics graphics, BoardView board, int firstRow, int lastRow) {
 
         Graphics2D g = (Graphics2D) graphics;
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        paintSnake(g);
-        paintFood(g);
-        paintPoison(g);
-        paintRocks(g);
-		addEyes(g);
+        paintSnake(g, board, firstRow, lastRow);
+        paintFood(g, board, firstRow, lastRow);
+        paintPoison(g, board, firstRow, lastRow);
+        paintRocks(g, board, firstRow, lastRow);
+		addEyes(g, board, firstRow, lastRow);
     }
 
-    private void paintSnake (Graphics2D g) {
+    private static boolean inRows (Square sq, int firstRow, int lastRow) {
+        return sq.getY() >= firstRow && sq.getY() <= lastRow;
+    }
+
+    private void paintSnake (Graphics2D g, BoardView board, int firstRow, int lastRow) {
         int x, y;
         int corner = Properties.SQUARE_SIZE / 3;
 
-        for (Square sq : snake) {
+        for (Square sq : board.getSnake()) {
+            if (!inRows(sq, firstRow, lastRow)) continue;
 
             x = sq.getX() * Properties.SQUARE_SIZE;
             y = sq.getY() * Properties.SQUARE_SIZE;
@@ -327,7 +685,8 @@ class GameBoard {
         }
     }
     
-    private void addEyeMovement() {
+    private static synchronized void addEyeMovement() {
+    	if (left != null) return;
     	
     	try {    			
     		left = ImageIO.read(new File("gifs/eyes_left.png"));
@@ -341,7 +700,7 @@ class GameBoard {
     
     }
    
-    private BufferedImage getEyesImage () {
+    private BufferedImage getEyesImage (Direction movement) {
     	if (movement == Direction.LEFT){
     		return left;	
     	}
@@ -358,17 +717,19 @@ class GameBoard {
     }
     
     
-    private void addEyes(Graphics2D g) {
-    	BufferedImage i = getEyesImage();
-		int x = snake.getHead().getX() * Properties.SQUARE_SIZE + 3;
-		int y = snake.getHead().getY() * Properties.SQUARE_SIZE + 3;
+    private void addEyes(Graphics2D g, BoardView board, int firstRow, int lastRow) {
+    	if (!inRows(board.getHead(), firstRow, lastRow)) return;
+    	BufferedImage i = getEyesImage(board.getMovement());
+		int x = board.getHead().getX() * Properties.SQUARE_SIZE + 3;
+		int y = board.getHead().getY() * Properties.SQUARE_SIZE + 3;
 		g.drawImage(i, x, y, null);
 
 	
 	}	
 
-    private void paintFood (Graphics2D g) {
-	    	for(Square food : foodList) {
+    private void paintFood (Graphics2D g, BoardView board, int firstRow, int lastRow) {
+	    	for(Square food : board.getFood()) {
+	    	if (!inRows(food, firstRow, lastRow)) continue;
 	        int x = food.getX() * Properties.SQUARE_SIZE;
 	        int y = food.getY() * Properties.SQUARE_SIZE;
 	        
@@ -380,10 +741,11 @@ class GameBoard {
 	    		}
 	    }
     
-	private void paintRocks(Graphics2D g) {
-		for (int i = 0; i < 5; i++) {
-			int x = rocks[i].getX() * Properties.SQUARE_SIZE;
-			int y = rocks[i].getY() * Properties.SQUARE_SIZE;
+	private void paintRocks(Graphics2D g, BoardView board, int firstRow, int lastRow) {
+		for (Square rock : board.getRocks()) {
+			if (!inRows(rock, firstRow, lastRow)) continue;
+			int x = rock.getX() * Properties.SQUARE_SIZE;
+			int y = rock.getY() * Properties.SQUARE_SIZE;
 			int corner = Properties.SQUARE_SIZE / 3;
 
 			g.setColor(Properties.rockColor);
@@ -391,9 +753,10 @@ class GameBoard {
 		}
 	}
 	
-	private void paintPoison(Graphics2D g) {
-		int x = poison.getX() * Properties.SQUARE_SIZE;
-		int y = poison.getY() * Properties.SQUARE_SIZE;
+	private void paintPoison(Graphics2D g, BoardView board, int firstRow, int lastRow) {
+		if (!inRows(board.getPoison(), firstRow, lastRow)) return;
+		int x = board.getPoison().getX() * Properties.SQUARE_SIZE;
+		int y = board.getPoison().getY() * Properties.SQUARE_SIZE;
 		int corner = Properties.SQUARE_SIZE / 3;
 
 		g.setColor(Properties.poisonColor);
@@ -0,0 +1,110 @@
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long it takes for a key press to show up on the screen. <br/>
+ * A key press is stamped with the time it happened, taken from
+ * KeyEvent.getWhen() so that time spent waiting in the event queue counts.
+ * The game loop picks the stamp up on the tick that applies the key, and the
+ * stamp travels with the snapshot of that tick until the frame showing it
+ * has been painted. If several keys arrive before a tick, only the first is
+ * measured, since it waited the longest. <br/>
+ * Latencies go into a histogram with one bucket per millisecond, so
+ * percentiles cover the whole session in constant memory.
+ */
+class LatencyMonitor {
+
+    private static final int BUCKETS = 1000;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final long[] histogram = new long[BUCKETS + 1];
+    private long samples = 0;
+    private long skipped = 0;
+    private long queueNanos = 0;
+    private long tickNanos = 0;
+    private long totalNanos = 0;
+
+    /**
+     * Stamps a key press. Called on the EDT when the key is handled.
+     * @param keyEvent  the key press
+     */
+    void keyPressed (KeyEvent keyEvent) {
+        long queued = Math.max(0, System.currentTimeMillis() - keyEvent.getWhen()) * 1_000_000L;
+        long stamp = System.nanoTime() - queued;
+        boolean first = pending.compareAndSet(0, stamp);
+        synchronized (this) {
+            if (!first) skipped++;
+            queueNanos += queued;
+        }
+    }
+
+    /**
+     * Takes the stamp of the key press waiting for this tick. Called by the game loop.
+     * @return  the time of the key press, or 0 if there is none
+     */
+    long takePending () {
+        return pending.getAndSet(0);
+    }
+
+    /**
+     * Records that a frame showing a key press has been painted.
+     * @param input     the time of the key press
+     * @param tick      the time of the tick that applied it
+     */
+    synchronized void presented (long input, long tick) {
+        long now = System.nanoTime();
+        int millis = (int) Math.min((now - input) / 1_000_000, BUCKETS);
+        histogram[millis]++;
+        samples++;
+        tickNanos += tick - input;
+        totalNanos += now - input;
+    }
+
+    /**
+     * Get a latency percentile.
+     * @param percent   the percentile, from 0 to 100
+     * @return          the latency in milliseconds, or -1 if nothing was measured
+     */
+    synchronized int percentile (double percent) {
+        if (samples == 0) return -1;
+        long rank = (long) Math.ceil(samples * percent / 100.0);
+        long seen = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= Math.max(rank, 1)) return i;
+        }
+        return BUCKETS;
+    }
+
+    @Override
+    public synchronized String toString () {
+        if (samples == 0) return "no input yet";
+        return "input lag p50 " + percentile(50) + " ms, p95 " + percentile(95)
+                + " ms, p99 " + percentile(99) + " ms";
+    }
+
+    /**
+     * Writes the histogram and a summary to a CSV file.
+     * @param file  the file to write
+     * @throws IOException  if the file cannot be written
+     */
+    synchronized void export (File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("# " + samples + " samples, " + skipped + " key presses not measured");
+            if (samples > 0) {
+                out.println("# mean ms: queue " + queueNanos / 1e6 / (samples + skipped)
+                        + ", to tick " + tickNanos / 1e6 / samples
+                        + ", to pixel " + totalNanos / 1e6 / samples);
+                out.println("# p50 " + percentile(50) + ", p95 " + percentile(95)
+                        + ", p99 " + percentile(99) + ", max " + percentile(100));
+            }
+            out.println("millis,count");
+            for (int i = 0; i <= BUCKETS; i++) {
+                if (histogram[i] > 0) out.println((i == BUCKETS ? BUCKETS + "+" : String.valueOf(i)) + "," + histogram[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Plays on a NetServer without waiting for the network. <br/>
+ * The client keeps its own predicted copy of the board and runs the same
+ * rules on it, so a turn shows up on the very next tick. Every turn is also
+ * sent to the server, tagged with the tick it was applied to, and kept until
+ * the server confirms it. When a confirmed board arrives the prediction is
+ * thrown away: the client goes back to the server's board and replays the
+ * turns the server has not seen yet, up to the present. Food and poison
+ * spawn from the game's seed and the tick, so the replay only differs from
+ * the prediction when the server applied a turn later than the client did. <br/>
+ * The client runs about one round trip ahead of the last confirmed tick, so
+ * that its turns reach the server before the tick they are meant for.
+ */
+class NetClient {
+
+    private static final long TICK_NANOS = 1_000_000_000L / Properties.TICKS_PER_SECOND;
+
+    private final NetLink link;
+    private final GameBoard board = new GameBoard();
+    private final ConcurrentLinkedQueue<Confirmation> confirmations = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Direction> steering = new AtomicReference<>();
+
+    // Turns the server has not confirmed yet: input number, tick, direction.
+    private final ArrayDeque<int[]> unconfirmed = new ArrayDeque<>();
+    private int inputs = 0;
+    private int game = -1;
+    private int restartedGame = -1;
+    private int confirmedTick = 0;
+    private long confirmedAt = 0;
+    private volatile long roundTrip = 0;
+    private volatile boolean connected = true;
+
+    private final ByteBuffer predicted;
+    private final ByteBuffer replayed;
+    private long confirmed = 0;
+    private long corrections = 0;
+    private long replayedTicks = 0;
+
+    private static class Confirmation {
+        final int game;
+        final int acked;
+        final long arrived;
+        final ByteBuffer state;
+
+        Confirmation (int game, int acked, long arrived, ByteBuffer state) {
+            this.game = game;
+            this.acked = acked;
+            this.arrived = arrived;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Connects to a server.
+     * @param host          the server's host name
+     * @param port          the server's port
+     * @param latencyMillis the simulated latency added to everything the client sends
+     * @param jitterMillis  the simulated jitter added to everything the client sends
+     * @throws IOException  if the server cannot be reached
+     */
+    NetClient (String host, int port, int latencyMillis, int jitterMillis) throws IOException {
+        link = new NetLink(new Socket(host, port), latencyMillis, jitterMillis);
+
+        int longest = GameBoard.getMaxEncodedSize();
+        predicted = ByteBuffer.allocate(longest);
+        replayed = ByteBuffer.allocate(longest);
+
+        Thread reader = new Thread(this::read, "Client link");
+        reader.setDaemon(true);
+        reader.start();
+        ping();
+    }
+
+    private void read () {
+        try {
+            while (true) {
+                ByteBuffer message = link.receive();
+                byte type = message.get();
+                if (type == NetServer.STATE) {
+                    confirmations.add(new Confirmation(message.getInt(), message.getInt(), System.nanoTime(), message));
+                } else if (type == NetServer.PONG) {
+                    long sample = System.nanoTime() - message.getLong();
+                    roundTrip = roundTrip == 0 ? sample : (roundTrip * 7 + sample) / 8;
+                }
+            }
+        } catch (IOException ex) {
+            connected = false;
+            link.close();
+        }
+    }
+
+    private void ping () {
+        send(ByteBuffer.allocate(9).put(NetServer.PING).putLong(System.nanoTime()).array());
+    }
+
+    private void send (byte[] message) {
+        try {
+            link.send(message);
+        } catch (IOException ex) {
+            connected = false;
+        }
+    }
+
+    /**
+     * Get the predicted board. Only the thread calling tick() may use it.
+     * @return  the board
+     */
+    GameBoard getBoard () {
+        return board;
+    }
+
+    boolean isConnected () {
+        return connected;
+    }
+
+    /**
+     * Turns the Snake on the next tick. Can be called from any thread.
+     * @param direction the new direction
+     */
+    void steer (Direction direction) {
+        steering.set(direction);
+    }
+
+    /**
+     * Asks the server for a new game, once per game. The board carries on as
+     * it is until the new game arrives. Only the thread calling tick() may ask.
+     */
+    void restart () {
+        if (restartedGame == game) return;
+        restartedGame = game;
+        send(new byte[] {NetServer.RESTART});
+    }
+
+    /**
+     * Catches up with the server, then runs the next tick of the prediction.
+     * Should be called TICKS_PER_SECOND times a second. If the prediction has
+     * drifted away from the server's clock, this runs two ticks or none.
+     */
+    void tick () {
+        reconcile();
+        if (game < 0) return; // Nothing from the server yet.
+
+        int behind = targetTick() - board.getTick();
+        int ticks = behind > 2 ? 2 : behind < -2 ? 0 : 1;
+        for (int i = 0; i < ticks; i++) {
+            predict();
+        }
+        if (board.getTick() % Properties.TICKS_PER_SECOND == 0) ping();
+    }
+
+    /**
+     * Get the tick the client should be on: the tick the server will be on
+     * when a turn sent now reaches it, plus one to spare.
+     */
+    private int targetTick () {
+        long sinceConfirmed = System.nanoTime() - confirmedAt;
+        return confirmedTick + (int) ((sinceConfirmed + roundTrip) / TICK_NANOS) + 1;
+    }
+
+    private void predict () {
+        Direction direction = steering.getAndSet(null);
+        int next = board.getTick() + 1;
+        if (direction != null) {
+            int[] input = {++inputs, next, direction.ordinal()};
+            unconfirmed.add(input);
+            send(ByteBuffer.allocate(14).put(NetServer.INPUT).putInt(game).putInt(input[0])
+                    .putInt(input[1]).put((byte) input[2]).array());
+            board.setDirection(direction);
+        }
+        board.update();
+    }
+
+    /**
+     * Goes back to the newest board confirmed by the server and replays the
+     * unconfirmed turns on top of it.
+     */
+    private void reconcile () {
+        Confirmation latest = null;
+        Confirmation next;
+        while ((next = confirmations.poll()) != null) {
+            latest = next; // They arrive in order, and only the newest one matters.
+        }
+        if (latest == null) return;
+
+        confirmed++;
+        while (!unconfirmed.isEmpty() && unconfirmed.peek()[0] <= latest.acked) {
+            unconfirmed.poll();
+        }
+
+        boolean newGame = latest.game != game;
+        int present = board.getTick();
+        predicted.clear();
+        board.encode(predicted);
+
+        board.load(latest.state);
+        game = latest.game;
+        confirmedTick = board.getTick();
+        confirmedAt = latest.arrived;
+
+        if (newGame) {
+            unconfirmed.clear();
+            present = targetTick();
+        }
+        replay(present);
+
+        replayed.clear();
+        board.encode(replayed);
+        if (!newGame && !predicted.flip().equals(replayed.flip())) corrections++;
+    }
+
+    private void replay (int until) {
+        Iterator<int[]> turns = unconfirmed.iterator();
+        int[] turn = turns.hasNext() ? turns.next() : null;
+        while (board.getTick() < until && !board.isGameOver()) {
+            int next = board.getTick() + 1;
+            // Turns the server has not seen yet will be applied on its next tick at the earliest.
+            while (turn != null && turn[1] <= next) {
+                board.setDirection(Direction.values()[turn[2]]);
+                turn = turns.hasNext() ? turns.next() : null;
+            }
+            board.update();
+            replayedTicks++;
+        }
+    }
+
+    /**
+     * Get the round trip time to the server.
+     * @return  the smoothed round trip in milliseconds
+     */
+    long getRoundTripMillis () {
+        return roundTrip / 1_000_000;
+    }
+
+    long getCorrections () {
+        return corrections;
+    }
+
+    @Override
+    public String toString () {
+        return confirmed + " confirmations, " + corrections + " corrections, " + replayedTicks
+                + " ticks replayed, " + unconfirmed.size() + " turns in flight, round trip "
+                + getRoundTripMillis() + " ms";
+    }
+
+    void close () {
+        link.close();
+    }
+
+    /**
+     * Plays against a server on loopback through a simulated network, turning
+     * at random, and prints how often the prediction had to be corrected.
+     * Arguments: [latency ms] [jitter ms] [seconds]
+     */
+    public static void main (String[] args) throws IOException, InterruptedException {
+        int latency = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int jitter = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        NetServer server = new NetServer(0, latency, jitter);
+        server.start();
+        NetClient client = new NetClient("localhost", server.getPort(), latency, jitter);
+
+        Random random = new Random();
+        long start = System.nanoTime();
+        long next = start;
+        while (System.nanoTime() - start < seconds * 1_000_000_000L) {
+            GameBoard board = client.getBoard();
+            if (board.isGameOver()) {
+                client.restart();
+            } else if (random.nextInt(4) == 0) {
+                // Turn towards the most room, so games last a while.
+                Direction best = board.getMovement();
+                for (Direction d : Direction.values()) {
+                    if (board.reachableAfter(d) > board.reachableAfter(best)) best = d;
+                }
+                client.steer(best);
+            }
+            client.tick();
+
+            next += TICK_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+        }
+
+        System.out.println(client);
+        client.close();
+        server.close();
+    }
+}
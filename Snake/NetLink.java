@@ -0,0 +1,129 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Sends and receives messages over a socket, each prefixed with its length. <br/>
+ * Messages are written by the link's own sender thread, so send() never
+ * blocks on the network. If the other end stops reading and more than
+ * MAX_QUEUED messages pile up, the link is closed rather than let the
+ * queue grow. <br/>
+ * For testing over loopback a link can hold back everything it sends for a
+ * fixed latency plus a random jitter. Messages still arrive in the order they
+ * were sent, the way they would over TCP: a message held back for longer
+ * holds up the ones behind it.
+ */
+class NetLink {
+
+    private static final int MAX_QUEUED = 256;
+    private static final int MAX_MESSAGE = 1 << 20;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Random random = new Random();
+    private final LinkedBlockingQueue<Delayed> queue = new LinkedBlockingQueue<>();
+    private long lastDue = 0;
+    private final Thread sender;
+
+    private static class Delayed {
+        final long due;
+        final byte[] message;
+
+        Delayed (long due, byte[] message) {
+            this.due = due;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Wraps a connected socket.
+     * @param socket        the socket
+     * @param latencyMillis how long to hold back each message sent, or 0 to send at once
+     * @param jitterMillis  how much the hold-up may vary either way
+     * @throws IOException  if the socket streams cannot be opened
+     */
+    NetLink (Socket socket, int latencyMillis, int jitterMillis) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(socket.getInputStream());
+        this.out = new DataOutputStream(socket.getOutputStream());
+        this.latencyNanos = latencyMillis * 1_000_000L;
+        this.jitterNanos = jitterMillis * 1_000_000L;
+        socket.setTcpNoDelay(true);
+
+        sender = new Thread(this::sendQueued, "Link sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Queues a message for the sender thread.
+     * @param message   the bytes of the message
+     * @throws IOException  if the link is closed, or the other end has stopped reading
+     */
+    void send (byte[] message) throws IOException {
+        if (socket.isClosed()) throw new IOException("Link closed");
+        if (queue.size() >= MAX_QUEUED) {
+            close();
+            throw new IOException("Other end is not reading");
+        }
+
+        synchronized (queue) {
+            long jitter = jitterNanos == 0 ? 0 : (long) ((random.nextDouble() * 2 - 1) * jitterNanos);
+            long due = Math.max(lastDue, System.nanoTime() + Math.max(0, latencyNanos + jitter));
+            lastDue = due;
+            queue.add(new Delayed(due, message));
+        }
+    }
+
+    private void sendQueued () {
+        try {
+            while (true) {
+                Delayed next = queue.take();
+                long wait = next.due - System.nanoTime();
+                if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                write(next.message);
+            }
+        } catch (InterruptedException | IOException ex) {
+            close();
+        }
+    }
+
+    private void write (byte[] message) throws IOException {
+        out.writeInt(message.length);
+        out.write(message);
+        out.flush();
+    }
+
+    /**
+     * Waits for the next message.
+     * @return              the message, ready to read
+     * @throws IOException  if the connection is closed or broken
+     */
+    ByteBuffer receive () throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_MESSAGE) throw new IOException("Bad message length " + length);
+        byte[] message = new byte[length];
+        in.readFully(message);
+        return ByteBuffer.wrap(message);
+    }
+
+    boolean isClosed () {
+        return socket.isClosed();
+    }
+
+    void close () {
+        sender.interrupt();
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the authoritative game for remote players, one GameBoard per
+ * connection, at TICKS_PER_SECOND. <br/>
+ * A client sends each turn tagged with the tick it should apply to. The
+ * server applies it on that tick, or on the next one if it arrived too late,
+ * and after every tick sends the whole board back together with the number
+ * of the last input it has applied, so the client knows which of its own
+ * predictions have been confirmed. <br/>
+ * Every session shares one tick thread, which never waits on a socket: the
+ * board is handed to the connection's own sender. A connection that closes or
+ * sends a malformed message ends its session, even after the game is over. <br/>
+ * Turns for more than MAX_LEAD ticks ahead are dropped, and a connection
+ * with more than MAX_PENDING turns waiting is closed, so one client cannot
+ * grow the server's memory or hold its own turns back for long.
+ */
+class NetServer {
+
+    // Client to server.
+    static final byte INPUT = 1;
+    static final byte PING = 2;
+    static final byte RESTART = 3;
+
+    // Server to client.
+    static final byte STATE = 1;
+    static final byte PONG = 2;
+
+    private static final int MAX_LEAD = 2 * Properties.TICKS_PER_SECOND;
+    private static final int MAX_PENDING = 64;
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Server ticks");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ServerSocket serverSocket;
+    private final int latencyMillis;
+    private final int jitterMillis;
+
+    /**
+     * Opens a server socket on all interfaces.
+     * @param port          the port to listen on, or 0 for any free port
+     * @param latencyMillis the simulated latency added to everything the server sends
+     * @param jitterMillis  the simulated jitter added to everything the server sends
+     * @throws IOException  if the port cannot be opened
+     */
+    NetServer (int port, int latencyMillis, int jitterMillis) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    int getPort () {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts players on a background thread until the server is closed.
+     */
+    void start () {
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    new Session(new NetLink(socket, latencyMillis, jitterMillis)).start();
+                } catch (IOException ex) {
+                    if (!serverSocket.isClosed()) ex.printStackTrace();
+                }
+            }
+        }, "Server accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    void close () {
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * The game of one connected player. Inputs are read on the connection's
+     * own thread and handed to the tick, which is the only thing that touches
+     * the board.
+     */
+    private static class Session {
+
+        private final NetLink link;
+        private final GameBoard board = new GameBoard();
+        private final ArrayBlockingQueue<int[]> received = new ArrayBlockingQueue<>(MAX_PENDING);
+        private final List<int[]> pending = new ArrayList<>();
+        private volatile boolean restartRequested = false;
+        private int game = 0;
+        private int acked = 0;
+        private boolean gameOverSent = false;
+        private volatile ScheduledFuture<?> ticks;
+
+        Session (NetLink link) {
+            this.link = link;
+        }
+
+        void start () {
+            ticks = TICKER.scheduleAtFixedRate(this::tick, 0, 1_000_000_000L / Properties.TICKS_PER_SECOND,
+                    TimeUnit.NANOSECONDS);
+
+            Thread reader = new Thread(this::read, "Server session");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void read () {
+            try {
+                while (true) {
+                    ByteBuffer message = link.receive();
+                    byte type = message.get();
+                    if (type == INPUT) {
+                        if (message.remaining() != 13) throw new IOException("Bad input message");
+                        // Game, input number, tick, direction.
+                        int[] input = {message.getInt(), message.getInt(), message.getInt(), message.get()};
+                        if (input[3] < 0 || input[3] >= Direction.values().length) {
+                            throw new IOException("Bad direction " + input[3]);
+                        }
+                        if (!received.offer(input)) throw new IOException("Too many inputs");
+                    } else if (type == PING) {
+                        if (message.remaining() != 8) throw new IOException("Bad ping message");
+                        link.send(ByteBuffer.allocate(9).put(PONG).putLong(message.getLong()).array());
+                    } else if (type == RESTART) {
+                        restartRequested = true;
+                    }
+                }
+            } catch (IOException ex) {
+                link.close(); // The player left or sent garbage; the next tick stops the session.
+            }
+        }
+
+        private void tick () {
+            if (link.isClosed()) {
+                // The first tick can run before start() has the future; the next one cancels it then.
+                if (ticks != null) ticks.cancel(false);
+                return;
+            }
+
+            int[] input;
+            while ((input = received.poll()) != null) {
+                // Turns meant for the last game, or too far ahead, are dropped.
+                if (input[0] != game || input[2] > board.getTick() + MAX_LEAD) continue;
+                if (pending.size() >= MAX_PENDING) {
+                    link.close(); // Stops the session on the next tick.
+                    return;
+                }
+                pending.add(input);
+            }
+
+            if (restartRequested) {
+                restartRequested = false;
+                board.reset();
+                game++;
+                pending.clear();
+                gameOverSent = false;
+            } else if (!board.isGameOver()) {
+                // Inputs come in the order they were sent; late ones are applied now.
+                int next = board.getTick() + 1;
+                while (!pending.isEmpty() && pending.get(0)[2] <= next) {
+                    int[] applied = pending.remove(0);
+                    board.setDirection(Direction.values()[applied[3]]);
+                    acked = applied[1];
+                }
+                board.update();
+            } else if (gameOverSent) {
+                return;
+            }
+
+            gameOverSent = board.isGameOver();
+            ByteBuffer state = ByteBuffer.allocate(9 + board.getEncodedSize());
+            state.put(STATE).putInt(game).putInt(acked);
+            board.encode(state);
+            try {
+                link.send(state.array());
+            } catch (IOException ex) {
+                link.close(); // Stops the session on the next tick.
+            }
+        }
+    }
+
+    /**
+     * Runs a server until the program is stopped.
+     * Arguments: [port] [latency ms] [jitter ms]
+     */
+    public static void main (String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int latency = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int jitter = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        NetServer server = new NetServer(port, latency, jitter);
+        System.out.println("Snake server on " + InetAddress.getLocalHost().getHostName() + ":" + server.getPort());
+        server.start();
+        Thread.currentThread().join(); // The server threads are daemons.
+    }
+}
@@ -14,6 +14,17 @@ class Properties {
     static final int START_X         = BOARD_COLUMNS / 2;
     static final int START_Y         = BOARD_ROWS / 2;
 
+    // Speed. The game normally runs at TICKS_PER_SECOND and can be sped up
+    // to MAX_SPEED times that, or run flat out in turbo mode.
+    static final int TICKS_PER_SECOND = 15;
+    static final int MAX_SPEED       = 1024;
+    static final int DISPLAY_FPS     = 60;
+
+    // Rewind, in ticks (15 per second).
+    static final int REWIND_CAPACITY = 150;
+    static final int REWIND_KEYFRAME = 15;
+    static final int REWIND_STEP     = 45;
+
     // Colors.
     static Color backgroundColor    = new Color(53, 53, 53);
     static Color snakeColor         = new Color(0, 255, 255);
@@ -0,0 +1,317 @@
+import java.util.Arrays;
+
+/**
+ * Keeps track of how many free Squares the Snake could still reach, so bots
+ * and warnings can tell when a move would trap it. <br/>
+ * Free Squares are grouped into regions with a union-find structure. When the
+ * tail moves off a Square, that Square simply joins the regions next to it.
+ * When the head moves onto a Square, the region shrinks by one; the Square is
+ * only allowed to split the region if its free neighbours are not already
+ * joined through the ring of eight Squares around it, and only then are the
+ * regions rebuilt from scratch, the next time they are needed. In open space
+ * that almost never happens, so updates and queries take close to constant
+ * time on average. <br/>
+ * Union-find cannot take a Square back out of a region, so a Square that
+ * becomes free again gets a fresh node. Nodes are recycled on every rebuild.
+ */
+class Reachability {
+
+    // Directions in clockwise order (up, right, down, left) as Direction ordinals.
+    private static final int[] CLOCKWISE = {2, 1, 3, 0};
+
+    private final int columns;
+    private final int rows;
+    private final boolean[] occupied;
+    private final int[] node;
+    private final int[] parent;
+    private final int[] size;
+    private int nodes;
+    private boolean dirty = true;
+
+    // The Snake's own Squares, head first, in a ring so the tail can be dropped.
+    private final int[] body;
+    private int head;
+    private int length;
+
+    private final int[] visited;
+    private final int[] queue;
+    private int stamp = 0;
+    private final int[] roots = new int[4];
+    private final int[] group = new int[4];
+    private final boolean[] freeSide = new boolean[4];
+
+    private long queries = 0;
+    private long slowQueries = 0;
+    private long rebuilds = 0;
+
+    /**
+     * Constructs a tracker for a board.
+     * @param columns   the width of the board
+     * @param rows      the height of the board
+     */
+    Reachability (int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        int cells = columns * rows;
+        occupied = new boolean[cells];
+        node = new int[cells];
+        parent = new int[4 * cells];
+        size = new int[4 * cells];
+        body = new int[cells + 2];
+        visited = new int[cells];
+        queue = new int[cells];
+    }
+
+    /**
+     * Starts again from a whole board, for example after a restart or a rewind.
+     * @param snake     the Snake's Squares, head first
+     * @param rocks     the rocks on the board
+     */
+    void reset (Iterable<Square> snake, Square[] rocks) {
+        Arrays.fill(occupied, false);
+        for (Square rock : rocks) {
+            if (onBoard(rock)) occupied[cell(rock)] = true;
+        }
+
+        head = 0;
+        length = 0;
+        for (Square sq : snake) {
+            if (!onBoard(sq)) continue;
+            body[length++] = cell(sq);
+            occupied[cell(sq)] = true;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Follows one move of the Snake.
+     * @param newHead   the Square the head moved onto, or null if it did not move
+     * @param removed   the number of Squares that came off the end of the Snake
+     */
+    void moved (Square newHead, int removed) {
+        if (newHead != null) {
+            if (!onBoard(newHead)) {
+                dirty = true; // The Snake left the board; the game is over.
+            } else {
+                int c = cell(newHead);
+                head = (head - 1 + body.length) % body.length;
+                body[head] = c;
+                length++;
+                occupy(c);
+            }
+        }
+
+        for (int i = 0; i < removed && length > 0; i++) {
+            length--;
+            free(body[(head + length) % body.length]);
+        }
+    }
+
+    private void occupy (int c) {
+        occupied[c] = true;
+        if (dirty) return;
+
+        if (mightSplit(c)) {
+            dirty = true;
+        } else {
+            size[find(node[c])]--;
+        }
+    }
+
+    private void free (int c) {
+        occupied[c] = false;
+        if (dirty) return;
+
+        if (nodes == parent.length) {
+            dirty = true; // Out of nodes; the next rebuild recycles them.
+            return;
+        }
+        node[c] = nodes;
+        parent[nodes] = nodes;
+        size[nodes] = 1;
+        nodes++;
+        for (int d = 0; d < 4; d++) {
+            int n = neighbour(c, d);
+            if (n >= 0 && !occupied[n]) union(node[c], node[n]);
+        }
+    }
+
+    /**
+     * Check to see if occupying a cell could cut its region in two. It cannot
+     * if the free neighbours of the cell are joined through the free Squares
+     * around it.
+     */
+    private boolean mightSplit (int c) {
+        for (int d = 0; d < 4; d++) {
+            int n = neighbour(c, d);
+            freeSide[d] = n >= 0 && !occupied[n];
+            group[d] = d;
+        }
+
+        // Going round clockwise, each pair of neighbours shares a corner.
+        for (int i = 0; i < 4; i++) {
+            int a = CLOCKWISE[i];
+            int b = CLOCKWISE[(i + 1) % 4];
+            if (freeSide[a] && freeSide[b] && isFreeCorner(c, a, b)) {
+                int from = group[b];
+                for (int k = 0; k < 4; k++) {
+                    if (group[k] == from) group[k] = group[a];
+                }
+            }
+        }
+
+        int first = -1;
+        for (int d = 0; d < 4; d++) {
+            if (!freeSide[d]) continue;
+            if (first < 0) first = group[d];
+            else if (group[d] != first) return true;
+        }
+        return false;
+    }
+
+    private boolean isFreeCorner (int c, int a, int b) {
+        int n = neighbour(c, a);
+        int corner = n < 0 ? -1 : neighbour(n, b);
+        return corner >= 0 && !occupied[corner];
+    }
+
+    /**
+     * Rebuilds every region from the occupied Squares.
+     */
+    private void rebuild () {
+        nodes = 0;
+        for (int c = 0; c < occupied.length; c++) {
+            node[c] = nodes;
+            parent[nodes] = nodes;
+            size[nodes] = occupied[c] ? 0 : 1;
+            nodes++;
+        }
+        for (int c = 0; c < occupied.length; c++) {
+            if (occupied[c]) continue;
+            if (c % columns < columns - 1 && !occupied[c + 1]) union(node[c], node[c + 1]);
+            if (c + columns < occupied.length && !occupied[c + columns]) union(node[c], node[c + columns]);
+        }
+        dirty = false;
+        rebuilds++;
+    }
+
+    /**
+     * Get the number of free Squares the Snake could reach from its head after
+     * moving one Square in a direction. A move that kills the Snake reaches nothing.
+     * @param direction     the direction of the move
+     * @param tailMoving    true if the tail will leave its Square on this move
+     * @return              the number of reachable free Squares
+     */
+    int reachableAfter (Direction direction, boolean tailMoving) {
+        queries++;
+        if (length == 0) return 0;
+        if (dirty) rebuild();
+
+        int n = neighbour(body[head], direction.ordinal());
+        if (n < 0 || occupied[n]) return 0;
+        int tail = tailMoving ? body[(head + length - 1) % body.length] : -1;
+
+        if (mightSplit(n)) {
+            slowQueries++;
+            return flood(n, tail);
+        }
+
+        int root = find(node[n]);
+        int count = size[root] - 1;
+        if (tail < 0) return count;
+
+        // The tail's Square joins whatever regions are next to it.
+        int found = 0;
+        boolean touches = false;
+        for (int d = 0; d < 4; d++) {
+            int m = neighbour(tail, d);
+            if (m < 0) continue;
+            if (m == n) {
+                touches = true;
+            } else if (!occupied[m]) {
+                int r = find(node[m]);
+                if (r == root) touches = true;
+                boolean seen = false;
+                for (int k = 0; k < found; k++) seen |= roots[k] == r;
+                if (!seen) roots[found++] = r;
+            }
+        }
+        if (!touches) return count;
+
+        count++;
+        for (int k = 0; k < found; k++) {
+            if (roots[k] != root) count += size[roots[k]];
+        }
+        return count;
+    }
+
+    /**
+     * Counts the free Squares reachable from a new head the slow way.
+     */
+    private int flood (int start, int tail) {
+        stamp++;
+        visited[start] = stamp;
+        int read = 0;
+        int write = 0;
+        queue[write++] = start;
+        int count = 0;
+
+        while (read < write) {
+            int c = queue[read++];
+            for (int d = 0; d < 4; d++) {
+                int n = neighbour(c, d);
+                if (n < 0 || visited[n] == stamp) continue;
+                if (occupied[n] && n != tail) continue;
+                visited[n] = stamp;
+                queue[write++] = n;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int find (int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private void union (int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) return;
+        if (size[a] < size[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+    }
+
+    /**
+     * Get the cell next to a cell, in Direction order, or -1 if it is off the board.
+     */
+    private int neighbour (int c, int direction) {
+        int x = c % columns;
+        if (direction == 0) return x > 0 ? c - 1 : -1;
+        if (direction == 1) return x < columns - 1 ? c + 1 : -1;
+        if (direction == 2) return c >= columns ? c - columns : -1;
+        return c + columns < columns * rows ? c + columns : -1;
+    }
+
+    private boolean onBoard (Square sq) {
+        return sq.getX() >= 0 && sq.getX() < columns && sq.getY() >= 0 && sq.getY() < rows;
+    }
+
+    private int cell (Square sq) {
+        return sq.getY() * columns + sq.getX();
+    }
+
+    @Override
+    public String toString () {
+        return queries + " queries, " + slowQueries + " flood fills, " + rebuilds + " rebuilds";
+    }
+}
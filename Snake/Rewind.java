@@ -0,0 +1,270 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Remembers the last few seconds of a game so it can be rewound. <br/>
+ * For each tick only what changed is stored: the new head, how many Squares
+ * came off the end of the Snake, and the handful of values (score, food,
+ * poison, directions) that describe the rest of the board. Every few ticks
+ * the whole Snake is copied into a keyframe. Seeking to a tick starts from
+ * the keyframe before it and replays the ticks in between. <br/>
+ * Everything lives in primitive arrays allocated up front, sized for the
+ * longest Snake the board can hold, so memory does not grow with the game.
+ * Squares are packed into ints as (x, y) pairs of shorts, because the head
+ * of a dead Snake can be just off the board.
+ */
+class Rewind {
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final int capacity;
+    private final int interval;
+    private final int foodQuantity;
+
+    // One row per tick, indexed by tick % capacity.
+    private final int[] heads;
+    private final byte[] removed;
+    private final int[] sizes;
+    private final int[] scores;
+    private final byte[] movements;
+    private final byte[] lastMoves;
+    private final int[] food;
+    private final int[] poisons;
+    private final boolean[] gameOvers;
+
+    // Keyframes, indexed by (tick / interval) % keyframeTicks.length.
+    private final int[] keyframeTicks;
+    private final int[] keyframeLengths;
+    private final int[][] keyframeBodies;
+
+    private final int[] scratch;
+    private int firstTick = -1;
+    private int newestTick = -1;
+    private int highestTick = -1;
+
+    /**
+     * Constructs an empty rewind buffer.
+     * @param capacity      the number of ticks to remember
+     * @param interval      the number of ticks between keyframes
+     * @param foodQuantity  the number of pieces of food on the board
+     */
+    Rewind (int capacity, int interval, int foodQuantity) {
+        this.capacity = capacity;
+        this.interval = interval;
+        this.foodQuantity = foodQuantity;
+
+        heads = new int[capacity];
+        removed = new byte[capacity];
+        sizes = new int[capacity];
+        scores = new int[capacity];
+        movements = new byte[capacity];
+        lastMoves = new byte[capacity];
+        food = new int[capacity * foodQuantity];
+        poisons = new int[capacity];
+        gameOvers = new boolean[capacity];
+
+        // The longest Snake fills the board, plus a head that went off the edge.
+        int longest = Properties.BOARD_COLUMNS * Properties.BOARD_ROWS + 1;
+        int keyframes = capacity / interval + 2;
+        keyframeTicks = new int[keyframes];
+        keyframeLengths = new int[keyframes];
+        keyframeBodies = new int[keyframes][longest];
+        scratch = new int[longest];
+        clear();
+    }
+
+    /**
+     * Forgets everything, for example when a new game starts.
+     */
+    void clear () {
+        firstTick = -1;
+        newestTick = -1;
+        highestTick = -1;
+        Arrays.fill(keyframeTicks, -1);
+    }
+
+    /**
+     * Records the state after a tick. Recording a tick that was already
+     * recorded, after seeking back, throws away the ticks that came after it.
+     * @param tick          the tick that just finished
+     * @param snake         the Snake after the tick
+     * @param head          the new head, or null if the Snake did not move
+     * @param removedCount  the number of Squares that came off the end of the Snake
+     * @param score         the score after the tick
+     * @param movement      the direction for the next tick
+     * @param lastMove      the direction of this tick's move
+     * @param foodList      the food on the board
+     * @param poison        the poison on the board
+     * @param gameOver      true if the Snake died on this tick
+     */
+    void record (int tick, Snake snake, Square head, int removedCount, int score, Direction movement,
+            Direction lastMove, List<Square> foodList, Square poison, boolean gameOver) {
+        if (firstTick < 0 || tick <= firstTick || tick > newestTick + 1) {
+            firstTick = tick; // Without the previous tick the history cannot be replayed.
+            highestTick = tick;
+        }
+        newestTick = tick;
+        highestTick = Math.max(highestTick, tick);
+
+        int row = tick % capacity;
+        heads[row] = head == null ? NONE : pack(head);
+        removed[row] = (byte) removedCount;
+        sizes[row] = snake.getSize();
+        scores[row] = score;
+        movements[row] = (byte) movement.ordinal();
+        lastMoves[row] = (byte) lastMove.ordinal();
+        for (int i = 0; i < foodQuantity; i++) {
+            food[row * foodQuantity + i] = i < foodList.size() ? pack(foodList.get(i)) : NONE;
+        }
+        poisons[row] = pack(poison);
+        gameOvers[row] = gameOver;
+
+        if (tick == firstTick || tick % interval == 0) {
+            int slot = (tick / interval) % keyframeTicks.length;
+            int length = 0;
+            for (Square sq : snake) {
+                keyframeBodies[slot][length++] = pack(sq);
+            }
+            keyframeTicks[slot] = tick;
+            keyframeLengths[slot] = length;
+        }
+    }
+
+    /**
+     * Get the earliest tick that can still be sought to. Ticks thrown away by
+     * seeking back still count: their rows overwrote older ticks.
+     * @return  the oldest tick, or -1 if nothing has been recorded
+     */
+    int getOldestTick () {
+        if (firstTick < 0) return -1;
+        int oldest = highestTick - capacity + 1;
+        if (oldest <= firstTick) return firstTick;
+        return (oldest + interval - 1) / interval * interval; // The first keyframe still in the buffer.
+    }
+
+    int getNewestTick () {
+        return newestTick;
+    }
+
+    /**
+     * Puts the board back to how it was after a tick.
+     * @param board     the board to restore
+     * @param tick      the tick to go back to
+     * @return          false if the tick is no longer (or not yet) remembered
+     */
+    boolean seek (GameBoard board, int tick) {
+        int oldest = getOldestTick();
+        if (oldest < 0 || tick < oldest || tick > newestTick) return false;
+
+        int keyframe = Math.max(tick / interval * interval, firstTick);
+        int slot = (keyframe / interval) % keyframeTicks.length;
+        if (keyframeTicks[slot] != keyframe) return false;
+
+        // Replay the body into a ring, head first, from the keyframe up to the tick.
+        int length = keyframeLengths[slot];
+        int start = 0;
+        System.arraycopy(keyframeBodies[slot], 0, scratch, 0, length);
+        for (int t = keyframe + 1; t <= tick; t++) {
+            int row = t % capacity;
+            if (heads[row] != NONE) {
+                start = (start - 1 + scratch.length) % scratch.length;
+                scratch[start] = heads[row];
+                length++;
+            }
+            length -= removed[row];
+        }
+
+        List<Square> body = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            body.add(unpack(Square.Entity.Snake, scratch[(start + i) % scratch.length]));
+        }
+
+        int row = tick % capacity;
+        List<Square> foodList = new ArrayList<>(foodQuantity);
+        for (int i = 0; i < foodQuantity; i++) {
+            int packed = food[row * foodQuantity + i];
+            if (packed != NONE) foodList.add(unpack(Square.Entity.Food, packed));
+        }
+
+        Direction[] directions = Direction.values();
+        board.restore(tick, body, sizes[row], scores[row], directions[movements[row]],
+                directions[lastMoves[row]], foodList, unpack(Square.Entity.Poison, poisons[row]),
+                gameOvers[row]);
+        return true;
+    }
+
+    private static int pack (Square sq) {
+        return (sq.getX() << 16) | (sq.getY() & 0xFFFF);
+    }
+
+    private static Square unpack (Square.Entity entity, int packed) {
+        return new Square(entity, packed >> 16, (short) packed);
+    }
+
+    /**
+     * Plays games with a rewind buffer, seeks back, plays on from there, then
+     * seeks further back, and prints how many of the ticks sought to did not
+     * match the board as it was played.
+     * Arguments: [games]
+     */
+    public static void main (String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int capacity = Properties.REWIND_CAPACITY;
+        int played = 0;
+        int sought = 0;
+        int mismatches = 0;
+
+        for (int g = 0; g < games; g++) {
+            Random random = new Random(g);
+            GameBoard board = new GameBoard();
+            Rewind rewind = GameBoard.createRewind();
+            board.setRewind(rewind);
+            board.reset(g);
+
+            // The board after each tick of the game as it stands.
+            Map<Integer, ByteBuffer> states = new HashMap<>();
+            play(board, random, capacity + 50, states);
+            if (board.isGameOver()) continue; // Too short to overwrite anything.
+
+            // Go back, take a different turn, and play a little way into the old future.
+            int back = board.getTick() - 45;
+            rewind.seek(board, back);
+            states.keySet().removeIf(tick -> tick > back);
+            play(board, random, 15, states);
+            played++;
+
+            int present = board.getTick();
+            for (int tick = 0; tick <= present; tick++) {
+                if (!rewind.seek(board, tick)) continue;
+                sought++;
+                if (!encode(board).equals(states.get(tick))) mismatches++;
+            }
+        }
+        System.out.println(played + " games, " + sought + " ticks sought, " + mismatches + " mismatches");
+    }
+
+    private static void play (GameBoard board, Random random, int ticks, Map<Integer, ByteBuffer> states) {
+        for (int i = 0; i < ticks && !board.isGameOver(); i++) {
+            // Head for the most room, picking at random between equal moves, so games last a while.
+            Direction best = board.getMovement();
+            for (Direction d : Direction.values()) {
+                int room = board.reachableAfter(d) - board.reachableAfter(best);
+                if (room > 0 || room == 0 && random.nextInt(3) == 0) best = d;
+            }
+            board.setDirection(best);
+            board.update();
+            states.put(board.getTick(), encode(board));
+        }
+    }
+
+    private static ByteBuffer encode (GameBoard board) {
+        ByteBuffer buffer = ByteBuffer.allocate(board.getEncodedSize());
+        board.encode(buffer);
+        return buffer.flip();
+    }
+}
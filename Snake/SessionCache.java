@@ -0,0 +1,155 @@
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the games of many players, keeping only the most recently used
+ * boards live on the heap. <br/>
+ * When there are more live boards than allowed, the least recently used
+ * board is hibernated: it is encoded into one shared direct buffer outside
+ * the heap and the GameBoard is dropped. The next get() for that session
+ * decodes it into a new GameBoard, so callers do not notice, apart from
+ * losing the rewind history. Callers should fetch a board from the cache each
+ * time they use it rather than keep it, or a hibernated game will carry on
+ * without them. <br/>
+ * New boards are appended to the end of the buffer, and waking one up leaves
+ * a hole. When the end is reached the hibernated boards are copied, packed
+ * together, into a new buffer, twice as big as they need, so an idle session
+ * only costs its map entry on the heap.
+ */
+class SessionCache {
+
+    private static final int INITIAL_SLAB = 64 * 1024;
+
+    private final int maxLive;
+    private final LinkedHashMap<String, GameBoard> live;
+
+    // Where each hibernated board is in the slab: offset in the high int, length in the low int.
+    private final Map<String, Long> hibernated = new HashMap<>();
+    private ByteBuffer slab = ByteBuffer.allocateDirect(INITIAL_SLAB);
+    private int end = 0;
+    private long usedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long compactions = 0;
+
+    /**
+     * Constructs an empty cache.
+     * @param maxLive   the most boards kept live on the heap
+     */
+    SessionCache (int maxLive) {
+        this.maxLive = maxLive;
+        this.live = new LinkedHashMap<String, GameBoard>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry (Map.Entry<String, GameBoard> eldest) {
+                if (size() <= SessionCache.this.maxLive) return false;
+                hibernate(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the board of a session, waking it up if it was hibernated.
+     * @param session   the session id
+     * @return          the board, or null if there is no such session
+     */
+    synchronized GameBoard get (String session) {
+        GameBoard board = live.get(session);
+        if (board != null) {
+            hits++;
+            return board;
+        }
+
+        Long location = hibernated.remove(session);
+        if (location == null) return null;
+
+        misses++;
+        board = GameBoard.decode(region(location));
+        usedBytes -= (int) (long) location;
+        live.put(session, board);
+        return board;
+    }
+
+    /**
+     * Get the board of a session, starting a new game if there is none.
+     * @param session   the session id
+     * @return          the board
+     */
+    synchronized GameBoard open (String session) {
+        GameBoard board = get(session);
+        if (board == null) {
+            board = new GameBoard();
+            live.put(session, board);
+        }
+        return board;
+    }
+
+    /**
+     * Forgets a session.
+     * @param session   the session id
+     */
+    synchronized void close (String session) {
+        live.remove(session);
+        Long location = hibernated.remove(session);
+        if (location != null) usedBytes -= (int) (long) location;
+    }
+
+    private void hibernate (String session, GameBoard board) {
+        int length = board.getEncodedSize();
+        if (end + length > slab.capacity()) compact(length);
+
+        ByteBuffer target = slab.duplicate();
+        target.position(end).limit(end + length);
+        board.encode(target);
+        hibernated.put(session, (long) end << 32 | length);
+        end += length;
+        usedBytes += length;
+        evictions++;
+    }
+
+    /**
+     * Packs the hibernated boards into a new slab with room for at least
+     * another board of the specified length.
+     */
+    private void compact (int length) {
+        long needed = (usedBytes + length) * 2;
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(INITIAL_SLAB, Long.highestOneBit(needed - 1) << 1));
+        ByteBuffer packed = ByteBuffer.allocateDirect(capacity);
+
+        for (Map.Entry<String, Long> entry : hibernated.entrySet()) {
+            long location = entry.getValue();
+            int offset = packed.position();
+            packed.put(region(location));
+            entry.setValue((long) offset << 32 | (int) location);
+        }
+        end = packed.position();
+        slab = packed;
+        compactions++;
+    }
+
+    private ByteBuffer region (long location) {
+        int offset = (int) (location >>> 32);
+        ByteBuffer region = slab.duplicate();
+        region.position(offset).limit(offset + (int) location);
+        return region;
+    }
+
+    synchronized int getLiveCount () {
+        return live.size();
+    }
+
+    synchronized int getHibernatedCount () {
+        return hibernated.size();
+    }
+
+    @Override
+    public synchronized String toString () {
+        return live.size() + " live, " + hibernated.size() + " hibernated (" + usedBytes + " of "
+                + slab.capacity() + " bytes off heap), " + hits + " hits, " + misses + " misses, "
+                + evictions + " evictions, " + compactions + " compactions";
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Contains a list of Square objects that represent the snake.
@@ -28,7 +29,21 @@ class Snake implements Iterable<Square> {
      */
     Snake (int startX, int startY) {
         snakeList = new ArrayList<>();
+        reset(startX, startY);
+    }
+
+    /**
+     * Shrink the snake back to a single Square at the specified location.
+     * The backing list is cleared rather than replaced so its capacity is
+     * reused by the next game.
+     * @param startX    the x coordinate of the location
+     * @param startY    the y coordinate of the location
+     */
+    synchronized void reset (int startX, int startY) {
+        snakeList.clear();
         snakeList.add(new Square(Square.Entity.Snake, startX, startY));
+        size = 1;
+        tail = null;
     }
 
     /**
@@ -39,6 +54,27 @@ class Snake implements Iterable<Square> {
         return size;
     }
 
+    /**
+     * Replace the whole Snake, for example when rewinding a game.
+     * @param body      the Squares of the Snake, head first
+     * @param size      the size the Snake is growing to
+     */
+    synchronized void restore (List<Square> body, int size) {
+        snakeList.clear();
+        snakeList.addAll(body);
+        this.size = size;
+        tail = null;
+    }
+
+    /**
+     * Get the number of Squares the Snake is on right now. This is less than
+     * the size while the Snake is still growing.
+     * @return  the number of Squares in the Snake
+     */
+    int getLength () {
+        return snakeList.size();
+    }
+
     /**
      * Direction the Snake left one Square.
      * @return  true if the Snake did not collide with itself
@@ -106,6 +142,17 @@ class Snake implements Iterable<Square> {
         return true;
     }
 
+    /**
+     * Move the Snake so that its head is on the specified Square, without
+     * checking for collisions. Used by Arena, which resolves the collisions
+     * of all its snakes at once before moving any of them.
+     * @param head  the new head, next to the current one
+     */
+    synchronized void advance (Square head) {
+        snakeList.add(0, head);
+        removeTail();
+    }
+
     private synchronized void removeTail () {
 
         tail = snakeList.get(snakeList.size() - 1);
@@ -123,6 +170,23 @@ class Snake implements Iterable<Square> {
         return tail; // The most recent square the snake was on that it is not on now.
     }
 
+    /**
+     * Get the Square at the end of the Snake.
+     * @return  the last Square the Snake is on
+     */
+    Square getLast () {
+        return snakeList.get(snakeList.size() - 1);
+    }
+
+    /**
+     * Check to see if the last Square will be freed on the next move,
+     * which is the case unless the Snake is still growing.
+     * @return  true if the Snake will leave its last Square
+     */
+    boolean isTailMoving () {
+        return snakeList.size() >= size;
+    }
+
     /**
      * Get the first Square in the Snake.
      * @return  the head of the Snake
@@ -0,0 +1,393 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the most food a Snake can eat on a small board, for checking levels
+ * and bots. <br/>
+ * The food on the board is fixed: eaten food does not respawn, so the search
+ * is exact and a "win" means every piece was eaten. Poison is not modelled.
+ * Moves follow the GameBoard rules: the Snake dies on leaving the board, on a
+ * rock or on any part of itself, and grows one square on the move after
+ * eating. <br/>
+ * The search is depth-first with iterative deepening. Every state is given a
+ * Zobrist hash that is updated as the head and tail move, and results are
+ * cached in a fixed-size transposition table shared by all worker threads.
+ * The table takes no locks: each slot stores the key XORed with the data, so
+ * a slot torn by two threads writing at once just fails to match. The workers
+ * search the same tree in different move orders and help each other through
+ * the table.
+ */
+class Solver {
+
+    private static final int TAIL = 4;
+
+    private final int columns;
+    private final int rows;
+    private final boolean[] rock;
+    private final int[] foodBit;
+    private final int foodCount;
+    private final int[] startBody;
+
+    private final long[] headKeys;
+    private final long[] linkKeys;
+    private final long[] foodKeys;
+    private final long[] pendingKeys;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Constructs a solver for a board.
+     * @param columns       the width of the board
+     * @param rows          the height of the board
+     * @param snake         the Squares of the Snake, head first
+     * @param food          the food on the board, at most 64 pieces
+     * @param rocks         the rocks on the board
+     * @param tableBits     the transposition table holds 2^tableBits entries
+     */
+    Solver (int columns, int rows, List<Square> snake, List<Square> food, List<Square> rocks, int tableBits) {
+        if (food.size() > 64) {
+            throw new IllegalArgumentException("At most 64 pieces of food are supported");
+        }
+
+        this.columns = columns;
+        this.rows = rows;
+        int cells = columns * rows;
+
+        rock = new boolean[cells];
+        for (Square sq : rocks) {
+            rock[cell(sq)] = true;
+        }
+        foodBit = new int[cells];
+        Arrays.fill(foodBit, -1);
+        for (int i = 0; i < food.size(); i++) {
+            foodBit[cell(food.get(i))] = i;
+        }
+        foodCount = food.size();
+        startBody = new int[snake.size()];
+        for (int i = 0; i < startBody.length; i++) {
+            startBody[i] = cell(snake.get(i));
+        }
+
+        Random rand = new Random(cells);
+        headKeys = randomKeys(rand, cells);
+        linkKeys = randomKeys(rand, cells * 5);
+        foodKeys = randomKeys(rand, foodCount);
+        pendingKeys = randomKeys(rand, foodCount + 1);
+
+        table = new AtomicLongArray(2 << tableBits);
+        tableMask = (1 << tableBits) - 1;
+    }
+
+    /**
+     * Constructs a solver for the current state of a GameBoard.
+     * @param board         a snapshot of the board
+     * @param tableBits     the transposition table holds 2^tableBits entries
+     * @return              the solver
+     */
+    static Solver of (BoardView board, int tableBits) {
+        return new Solver(board.getColumns(), board.getRows(), board.getSnake(),
+                board.getFood(), board.getRocks(), tableBits);
+    }
+
+    private static long[] randomKeys (Random rand, int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = rand.nextLong();
+        }
+        return keys;
+    }
+
+    private int cell (Square sq) {
+        return sq.getY() * columns + sq.getX();
+    }
+
+    /**
+     * Searches with increasing depth until every piece of food can be eaten
+     * or the depth limit is reached.
+     * @param maxDepth  the most moves to look ahead
+     * @param threads   the number of worker threads
+     * @return          the best result found
+     */
+    Result solve (int maxDepth, int threads) {
+        long start = System.nanoTime();
+        nodes.reset();
+        probes.reset();
+        hits.reset();
+        Worker[] workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+        AtomicBoolean done = new AtomicBoolean();
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i, maxDepth, done);
+            running[i] = new Thread(workers[i], "Solver " + i);
+            running[i].start();
+        }
+        for (Thread thread : running) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Workers agree at every depth they completed, so take the one that got furthest.
+        Worker best = workers[0];
+        for (Worker worker : workers) {
+            if (worker.food > best.food || (worker.food == best.food && worker.depth > best.depth)) {
+                best = worker;
+            }
+        }
+        return new Result(best.food, foodCount, best.depth, nodes.sum(), probes.sum(),
+                hits.sum(), System.nanoTime() - start);
+    }
+
+    /**
+     * One search thread, with its own copy of the board.
+     */
+    private class Worker implements Runnable {
+
+        private final int[] body = new int[columns * rows + 1]; // Ring buffer, head first.
+        private final boolean[] occupied = new boolean[columns * rows];
+        private final int[] order = new int[4];
+        private final int maxDepth;
+        private final AtomicBoolean done;
+        private int head;
+        private int length;
+        private int pending;
+        private long foodMask;
+        private long hash;
+
+        private int food = 0;
+        private int depth = 0;
+
+        private Worker (int id, int maxDepth, AtomicBoolean done) {
+            this.maxDepth = maxDepth;
+            this.done = done;
+            for (int i = 0; i < 4; i++) {
+                order[i] = (i + id) % 4; // Each worker tries moves in a different order.
+            }
+
+            length = startBody.length;
+            head = 0;
+            for (int i = 0; i < length; i++) {
+                body[i] = startBody[i];
+                occupied[startBody[i]] = true;
+                hash ^= linkKeys[startBody[i] * 5 + (i == length - 1 ? TAIL : towards(startBody[i], startBody[i + 1]))];
+            }
+            hash ^= headKeys[startBody[0]];
+            foodMask = foodCount == 64 ? -1L : (1L << foodCount) - 1;
+            for (int i = 0; i < foodCount; i++) {
+                hash ^= foodKeys[i];
+            }
+            hash ^= pendingKeys[0];
+        }
+
+        public void run () {
+            for (int d = 1; d <= maxDepth && !done.get(); d++) {
+                int result = search(d);
+                if (done.get()) break; // Another worker finished first, so this search was cut short.
+                food = result;
+                depth = d;
+                if (food == foodCount) done.set(true);
+            }
+        }
+
+        /**
+         * Get the most food that can be eaten within a number of moves.
+         */
+        private int search (int remaining) {
+            nodes.increment();
+            int left = Long.bitCount(foodMask);
+            if (remaining == 0 || left == 0 || done.get()) return 0;
+
+            int slot = (int) hash & tableMask;
+            probes.increment();
+            long data = table.get(2 * slot + 1);
+            if ((table.get(2 * slot) ^ data) == hash) {
+                int storedDepth = (int) (data >>> 16);
+                int storedValue = (int) (data & 0xFFFF);
+                // Exact at the same depth. With more moves the most food can only go up,
+                // so "none" from deeper and "all of it" from shallower also hold here.
+                if (storedDepth == remaining || (storedDepth > remaining && storedValue == 0)
+                        || (storedDepth < remaining && storedValue == left)) {
+                    hits.increment();
+                    return storedValue;
+                }
+            }
+
+            int best = 0;
+            int from = body[head];
+            for (int i = 0; i < 4 && best < left; i++) {
+                int to = neighbour(from, order[i]);
+                if (to < 0 || rock[to] || occupied[to]) continue; // The Snake would die.
+
+                int value = move(from, to, remaining);
+                if (value > best) best = value;
+            }
+
+            // Once the search is called off, children return 0, so best is not exact. The
+            // flag never goes back, so if it is still clear no child was cut short.
+            if (done.get()) return best;
+
+            long stored = ((long) remaining << 16) | best;
+            table.set(2 * slot, hash ^ stored);
+            table.set(2 * slot + 1, stored);
+            return best;
+        }
+
+        /**
+         * Moves the head onto a free cell, searches from there, then takes the move back.
+         */
+        private int move (int from, int to, int remaining) {
+            long savedHash = hash;
+            int savedPending = pending;
+            int capacity = body.length;
+
+            head = (head - 1 + capacity) % capacity;
+            body[head] = to;
+            occupied[to] = true;
+            length++;
+            hash ^= headKeys[from] ^ headKeys[to] ^ linkKeys[to * 5 + towards(to, from)];
+
+            int tail = -1;
+            if (pending > 0) {
+                pending--;
+            } else {
+                tail = body[(head + length - 1) % capacity];
+                int newTail = body[(head + length - 2) % capacity];
+                length--;
+                occupied[tail] = false;
+                hash ^= linkKeys[tail * 5 + TAIL] ^ linkKeys[newTail * 5 + towards(newTail, tail)]
+                        ^ linkKeys[newTail * 5 + TAIL];
+            }
+
+            int ate = 0;
+            int bit = foodBit[to];
+            if (bit >= 0 && (foodMask & (1L << bit)) != 0) {
+                foodMask &= ~(1L << bit);
+                hash ^= foodKeys[bit];
+                pending++;
+                ate = 1;
+            }
+            hash ^= pendingKeys[savedPending] ^ pendingKeys[pending];
+
+            int value = ate + search(remaining - 1);
+
+            if (ate == 1) foodMask |= 1L << bit;
+            if (tail >= 0) {
+                length++;
+                body[(head + length - 1) % capacity] = tail;
+                occupied[tail] = true;
+            }
+            occupied[to] = false;
+            head = (head + 1) % capacity;
+            length--;
+            pending = savedPending;
+            hash = savedHash;
+            return value;
+        }
+    }
+
+    /**
+     * Get the cell next to a cell in a direction, or -1 if it is off the board.
+     */
+    private int neighbour (int cell, int direction) {
+        int x = cell % columns;
+        int y = cell / columns;
+        if (direction == 0) return x > 0 ? cell - 1 : -1;
+        if (direction == 1) return x < columns - 1 ? cell + 1 : -1;
+        if (direction == 2) return y > 0 ? cell - columns : -1;
+        return y < rows - 1 ? cell + columns : -1;
+    }
+
+    /**
+     * Get the direction from a cell to the cell next to it.
+     */
+    private int towards (int from, int to) {
+        if (to == from - 1) return 0;
+        if (to == from + 1) return 1;
+        if (to == from - columns) return 2;
+        return 3;
+    }
+
+    /**
+     * The outcome of a search and how it went.
+     */
+    static class Result {
+        final int food;
+        final int totalFood;
+        final int depth;
+        final long nodes;
+        final long probes;
+        final long hits;
+        final long nanos;
+
+        private Result (int food, int totalFood, int depth, long nodes, long probes, long hits, long nanos) {
+            this.food = food;
+            this.totalFood = totalFood;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.probes = probes;
+            this.hits = hits;
+            this.nanos = nanos;
+        }
+
+        int getScore () {
+            return food * 10;
+        }
+
+        boolean isWin () {
+            return food == totalFood;
+        }
+
+        @Override
+        public String toString () {
+            double seconds = nanos / 1_000_000_000.0;
+            return "Best score " + getScore() + (isWin() ? " (all food eaten)" : "")
+                    + " within " + depth + " moves, " + nodes + " nodes, "
+                    + (long) (nodes / Math.max(seconds, 1e-9)) + " nodes/s, table hit rate "
+                    + String.format("%.1f%%", probes == 0 ? 0.0 : 100.0 * hits / probes);
+        }
+    }
+
+    /**
+     * Solves a random small board from the command line:
+     * <pre>java Solver &lt;columns&gt; &lt;rows&gt; &lt;food&gt; &lt;rocks&gt; &lt;depth&gt; [seed]</pre>
+     */
+    public static void main (String[] args) {
+        if (args.length < 5) {
+            System.err.println("Usage: Solver <columns> <rows> <food> <rocks> <depth> [seed]");
+            return;
+        }
+
+        int columns = Integer.parseInt(args[0]);
+        int rows = Integer.parseInt(args[1]);
+        Random rand = new Random(args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime());
+        List<Square> snake = List.of(new Square(Square.Entity.Snake, columns / 2, rows / 2));
+        ArrayList<Square> taken = new ArrayList<>(snake);
+
+        ArrayList<Square> food = new ArrayList<>();
+        ArrayList<Square> rocks = new ArrayList<>();
+        for (int i = 0; i < Integer.parseInt(args[2]) + Integer.parseInt(args[3]); i++) {
+            Square sq;
+            do {
+                sq = new Square(rand.nextInt(columns), rand.nextInt(rows));
+            } while (taken.contains(sq));
+            taken.add(sq);
+            (i < Integer.parseInt(args[2]) ? food : rocks).add(sq);
+        }
+
+        Solver solver = new Solver(columns, rows, snake, food, rocks, 22);
+        System.out.println(solver.solve(Integer.parseInt(args[4]), Runtime.getRuntime().availableProcessors()));
+    }
+}
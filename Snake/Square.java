@@ -3,7 +3,7 @@
  * is what is on the Square: either there is food, a piece of the snake,
  * or it is empty.
  */
-class Square {
+public class Square {
 
     private Entity entity;
     private int x;
@@ -42,15 +42,15 @@ class Square {
      * Get what is on the Square.
      * @return          the entity on the Square
      */
-    Entity getEntity () {
+    public Entity getEntity () {
         return entity;
     }
 
-    int getX () {
+    public int getX () {
         return x;
     }
 
-    int getY () {
+    public int getY () {
         return y;
     }
 
@@ -65,6 +65,11 @@ class Square {
         return sq.x == x && sq.y == y;
     }
 
+    @Override
+    public int hashCode () {
+        return 31 * x + y;
+    }
+
     @Override
     public String toString () {
         return entity + " at (" + x + ", " + y + ")";
@@ -73,7 +78,7 @@ class Square {
     /**
      * Represents what is on a particular square.
      */
-    enum Entity {
+    public enum Entity {
         Empty,
         Snake,
         Food,
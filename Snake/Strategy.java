@@ -0,0 +1,16 @@
+/**
+ * Decides which way a bot-controlled Snake should move. <br/>
+ * A Strategy is asked once per tick and is given a snapshot of the board,
+ * so it may take its time without seeing the board change underneath it.
+ * If it does not answer within the tick's time budget, the Snake keeps
+ * its current direction.
+ */
+public interface Strategy {
+
+    /**
+     * Choose the next direction for the Snake.
+     * @param board     a read-only snapshot of the board
+     * @return          the direction to move in, or null to keep going straight
+     */
+    Direction nextMove (BoardView board);
+}
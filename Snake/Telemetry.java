@@ -0,0 +1,206 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+/**
+ * Records one row per tick of a game and writes the rows to a file on a
+ * background thread, so the game loop never waits on disk. <br/>
+ * Rows are kept in a fixed size ring of primitive columns with one writer
+ * (the game loop) and one reader (the background thread), so no locks are
+ * needed. If the ring is full the row is dropped and counted instead of
+ * blocking the game. <br/>
+ * The file is a sequence of chunks. Each chunk starts with three ints (row
+ * count, uncompressed length, compressed length) followed by the deflated
+ * columns: tick, x, y, length and score delta as ints, then direction and
+ * event as bytes.
+ */
+class Telemetry implements Runnable {
+
+    private static final int CHUNK_ROWS = 4096;
+    private static final int ROW_BYTES = 5 * Integer.BYTES + 2;
+
+    private final int mask;
+    private final int[] ticks;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] lengths;
+    private final int[] scoreDeltas;
+    private final byte[] directions;
+    private final byte[] events;
+
+    // Next row the game loop will fill, and next row the writer will read.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private final ByteBuffer raw = ByteBuffer.allocate(CHUNK_ROWS * ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] compressed = new byte[CHUNK_ROWS * ROW_BYTES + 1024];
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private volatile boolean running = true;
+    private volatile long lastRow = Long.MAX_VALUE;
+
+    /**
+     * Opens the file and starts the writer thread.
+     * @param file      the file to write to, replaced if it exists
+     * @param capacity  the number of rows the ring can hold, rounded up to a power of two
+     * @throws IOException  if the file cannot be opened
+     */
+    Telemetry (File file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        ticks = new int[size];
+        xs = new int[size];
+        ys = new int[size];
+        lengths = new int[size];
+        scoreDeltas = new int[size];
+        directions = new byte[size];
+        events = new byte[size];
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writer = new Thread(this, "Telemetry writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Adds a row. Called from the game loop only.
+     * @return  false if the ring was full and the row was dropped
+     */
+    boolean record (int tick, int x, int y, Direction direction, int length, int scoreDelta, Event event) {
+        long h = head.get();
+        if (h - tail.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        int i = (int) h & mask;
+        ticks[i] = tick;
+        xs[i] = x;
+        ys[i] = y;
+        lengths[i] = length;
+        scoreDeltas[i] = scoreDelta;
+        directions[i] = (byte) direction.ordinal();
+        events[i] = (byte) event.ordinal();
+        head.lazySet(h + 1); // Publishes the row to the writer.
+        return true;
+    }
+
+    /**
+     * Get the number of rows dropped because the writer fell behind.
+     * @return  the dropped row count
+     */
+    long getDropped () {
+        return dropped.get();
+    }
+
+    /**
+     * Get the number of rows written to the file.
+     * @return  the written row count
+     */
+    long getWritten () {
+        return written.get();
+    }
+
+    /**
+     * Flushes the rows recorded so far and closes the file. Rows the game loop
+     * records after this are not written, so a game that keeps running cannot
+     * keep the writer busy forever. toString() then gives the final counts.
+     */
+    void close () {
+        lastRow = head.get();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run () {
+        try {
+            while (running) {
+                if (!writeChunk(Long.MAX_VALUE)) {
+                    LockSupport.parkNanos(10_000_000L);
+                }
+            }
+            while (writeChunk(lastRow)) {
+                // Drain up to the row that was last when close() was called.
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        } finally {
+            deflater.end();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes up to one chunk of pending rows.
+     * @param limit the row to stop before
+     * @return      false if there was nothing to write
+     */
+    private boolean writeChunk (long limit) throws IOException {
+        long t = tail.get();
+        int count = (int) Math.min(Math.min(head.get(), limit) - t, CHUNK_ROWS);
+        if (count <= 0) return false;
+
+        raw.clear();
+        for (int n = 0; n < count; n++) raw.putInt(ticks[(int) (t + n) & mask]);
+        for (int n = 0; n < count; n++) raw.putInt(xs[(int) (t + n) & mask]);
+        for (int n = 0; n < count; n++) raw.putInt(ys[(int) (t + n) & mask]);
+        for (int n = 0; n < count; n++) raw.putInt(lengths[(int) (t + n) & mask]);
+        for (int n = 0; n < count; n++) raw.putInt(scoreDeltas[(int) (t + n) & mask]);
+        for (int n = 0; n < count; n++) raw.put(directions[(int) (t + n) & mask]);
+        for (int n = 0; n < count; n++) raw.put(events[(int) (t + n) & mask]);
+
+        // The rows have been copied out, so the game loop may reuse them.
+        tail.lazySet(t + count);
+
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        int compressedLength = deflater.deflate(compressed);
+
+        ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(count).putInt(raw.position()).putInt(compressedLength).flip();
+        ByteBuffer body = ByteBuffer.wrap(compressed, 0, compressedLength);
+        while (header.hasRemaining() || body.hasRemaining()) {
+            channel.write(new ByteBuffer[] {header, body});
+        }
+
+        written.addAndGet(count);
+        return true;
+    }
+
+    @Override
+    public String toString () {
+        return "Telemetry: " + written.get() + " rows written, " + dropped.get() + " rows dropped";
+    }
+
+    /**
+     * What happened on a tick.
+     */
+    enum Event {
+        Move,
+        Food,
+        Poison,
+        Death
+    }
+}
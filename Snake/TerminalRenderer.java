@@ -0,0 +1,158 @@
+import java.awt.Color;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Draws a GameBoard in a terminal with ANSI escape sequences, for hosts
+ * without a display. <br/>
+ * Each Square is two character cells wide so the board keeps its shape.
+ * The renderer remembers what it drew last time and only sends the cells
+ * that changed, usually the new head, the square the tail left and any food
+ * that spawned. Cursor moves and colour changes are skipped when the cursor
+ * is already in place or the colour is already set, and a whole frame goes
+ * out in a single write.
+ */
+class TerminalRenderer {
+
+    private static final String ESC = "\u001b[";
+    private static final byte HEAD = (byte) Square.Entity.values().length;
+    private static final byte UNKNOWN = -1;
+
+    private final OutputStream out;
+    private final byte[] cells = new byte[Properties.BOARD_COLUMNS * Properties.BOARD_ROWS];
+    private final byte[] drawn = new byte[cells.length];
+    private final Color[] palette = new Color[HEAD + 1];
+    private final Color[] current = new Color[HEAD + 1];
+    private final StringBuilder frame = new StringBuilder();
+    private int drawnScore = Integer.MIN_VALUE;
+    private boolean cleared = false;
+
+    /**
+     * Constructs a renderer.
+     * @param out   where the escape sequences are written, usually the terminal
+     */
+    TerminalRenderer (OutputStream out) {
+        this.out = out;
+        Arrays.fill(drawn, UNKNOWN);
+    }
+
+    /**
+     * Draws the parts of the board that changed since the last call.
+     * @param board     the board to draw
+     * @throws IOException  if the frame cannot be written
+     */
+    void render (GameBoard board) throws IOException {
+        board.fillEntities(cells);
+        Square head = board.getHead();
+        if (head.getX() >= 0 && head.getX() < Properties.BOARD_COLUMNS
+                && head.getY() >= 0 && head.getY() < Properties.BOARD_ROWS) {
+            cells[head.getY() * Properties.BOARD_COLUMNS + head.getX()] = HEAD;
+        }
+
+        frame.setLength(0);
+        if (!cleared) {
+            frame.append(ESC).append("2J").append(ESC).append("?25l"); // Clear, hide the cursor.
+            cleared = true;
+        }
+        if (updatePalette()) {
+            Arrays.fill(drawn, UNKNOWN); // The theme changed, so everything is redrawn.
+        }
+
+        int cursor = -1;
+        byte color = UNKNOWN;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == drawn[i]) continue;
+
+            if (i != cursor || i % Properties.BOARD_COLUMNS == 0) {
+                int row = i / Properties.BOARD_COLUMNS + 1;
+                int column = (i % Properties.BOARD_COLUMNS) * 2 + 1;
+                frame.append(ESC).append(row).append(';').append(column).append('H');
+            }
+            if (cells[i] != color) {
+                color = cells[i];
+                Color c = palette[color];
+                frame.append(ESC).append("48;2;").append(c.getRed()).append(';')
+                        .append(c.getGreen()).append(';').append(c.getBlue()).append('m');
+            }
+            frame.append(cells[i] == HEAD ? ESC + "30moo" : "  ");
+
+            drawn[i] = cells[i];
+            cursor = i + 1;
+        }
+
+        if (board.getScore() != drawnScore) {
+            drawnScore = board.getScore();
+            frame.append(ESC).append("0m").append(ESC).append(Properties.BOARD_ROWS + 1).append(";1H")
+                    .append(ESC).append('K').append("Score: ").append(drawnScore);
+        }
+        if (frame.length() == 0) return;
+
+        frame.append(ESC).append("0m");
+        out.write(frame.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Copies the current theme's colours.
+     * @return  true if any colour is different from last time
+     */
+    private boolean updatePalette () {
+        current[Square.Entity.Empty.ordinal()] = Properties.backgroundColor;
+        current[Square.Entity.Snake.ordinal()] = Properties.snakeColor;
+        current[Square.Entity.Food.ordinal()] = Properties.foodColor;
+        current[Square.Entity.Poison.ordinal()] = Properties.poisonColor;
+        current[Square.Entity.Rock.ordinal()] = Properties.rockColor;
+        current[HEAD] = Properties.snakeColor;
+
+        if (Arrays.equals(current, palette)) return false;
+        System.arraycopy(current, 0, palette, 0, palette.length);
+        return true;
+    }
+
+    /**
+     * Puts the terminal back the way it was.
+     * @throws IOException  if the reset cannot be written
+     */
+    void close () throws IOException {
+        String reset = ESC + "0m" + ESC + "?25h" + ESC + (Properties.BOARD_ROWS + 2) + ";1H";
+        out.write(reset.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Plays games in the terminal, steered by the bot named by the snake.bot
+     * properties, starting a new game whenever one ends.
+     */
+    public static void main (String[] args) throws IOException, InterruptedException {
+        Bot bot = Bot.fromProperties();
+        GameBoard board = new GameBoard();
+        TerminalRenderer renderer = new TerminalRenderer(new FileOutputStream(FileDescriptor.out));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                renderer.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }));
+
+        long frameNanos = 1_000_000_000L / 15;
+        while (true) {
+            long start = System.nanoTime();
+            if (board.isGameOver()) {
+                board.reset();
+            }
+            if (bot != null) {
+                board.setDirection(bot.decide(board.botView(), board.getMovement()));
+            }
+            board.update();
+            renderer.render(board);
+
+            long sleep = frameNanos - (System.nanoTime() - start);
+            if (sleep > 0) Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+        }
+    }
+}
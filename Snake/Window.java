@@ -4,6 +4,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Runs a game of Snake.
@@ -13,13 +17,99 @@ import java.awt.event.KeyEvent;
 public class Window extends JFrame {
 
     private Engine engine;
-    private GameBoard gameBoard = new GameBoard(this);
+    private GameBoard gameBoard = new GameBoard();
+    private LatencyMonitor latency = new LatencyMonitor();
+    private NetClient client;
 
     private Window() {
+        connect();
+        if (client == null) {
+            gameBoard.setRewind(GameBoard.createRewind());
+        }
         engine = createEngine();
+        if (client == null) startTelemetry();
+        exportLatency();
+        loadBot();
+        if (client != null && !engine.running) {
+            startGame(engine); // The server's game is already running.
+            engine.running = true;
+        }
         setWindowProperties();
     }
 
+    /**
+     * Plays on the server named by the snake.server system property (host:port),
+     * if set, through a NetClient. The snake.lag and snake.jitter properties add
+     * a simulated delay, in milliseconds, to everything the client sends.
+     */
+    private void connect () {
+        String server = System.getProperty("snake.server");
+        if (server == null) return;
+
+        int colon = server.lastIndexOf(':');
+        try {
+            client = new NetClient(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)),
+                    Integer.getInteger("snake.lag", 0), Integer.getInteger("snake.jitter", 0));
+            gameBoard = client.getBoard();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the input latency histogram to the file named by the snake.latency
+     * system property, if set, when the program exits.
+     */
+    private void exportLatency () {
+        String path = System.getProperty("snake.latency");
+        if (path == null) return;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                latency.export(new File(path));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }));
+    }
+
+    /**
+     * Lets a Strategy drive the Snake if the snake.bot (jar) and snake.bot.class
+     * system properties are set. The game starts straight away.
+     */
+    private void loadBot () {
+        try {
+            Bot bot = Bot.fromProperties();
+            if (bot == null) return;
+            engine.bot = bot;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> bot.close()));
+
+            startGame(engine);
+            engine.running = true;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Records every tick to the file named by the snake.telemetry system property, if set.
+     */
+    private void startTelemetry () {
+        String path = System.getProperty("snake.telemetry");
+        if (path == null) return;
+
+        try {
+            Telemetry telemetry = new Telemetry(new File(path), 1 << 16);
+            gameBoard.setTelemetry(telemetry);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                telemetry.close();
+                System.out.println(telemetry);
+            }));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
     private Engine createEngine () {
 
         Container cp = getContentPane();
@@ -51,15 +141,46 @@ public class Window extends JFrame {
     }
 
     /**
-     * Contains the game loop.
+     * Contains the game loop. <br/>
+     * The game logic runs on its own thread at TICKS_PER_SECOND times the
+     * speed, or as fast as it can in turbo mode. Painting happens on a Swing
+     * timer at DISPLAY_FPS: after each frame is painted, the game loop hands
+     * over a snapshot of the latest finished tick, so any ticks in between
+     * are never drawn and painting never slows the game down.
      */
     private class Engine extends JPanel implements Runnable {
 
         private GameBoard gameBoard;
         private boolean running = false;
+        private volatile boolean restartRequested = false;
+        private volatile int rewindRequested = 0;
+        private volatile int speed = 1;
+        private volatile boolean turbo = false;
+        private volatile boolean frameRequested = false;
+        private volatile BoardView frame;
+        private int titleScore = -1;
+        private long titleTime = 0;
+        private boolean showLatency = false;
+
+        // The key press shown by the next snapshot, and the key press shown by the current one.
+        private long unpublishedInput = 0;
+        private long unpublishedTick = 0;
+        private volatile long frameInput = 0;
+        private volatile long frameTick = 0;
+        private Bot bot;
+        private final BandedRenderer renderer = new BandedRenderer();
 
         private Engine(GameBoard gameBoard) {
             this.gameBoard = gameBoard;
+            this.frame = gameBoard.view();
+
+            new Timer(1000 / Properties.DISPLAY_FPS, e -> {
+                //7/28/2017
+                //If the rainbow theme is selected lets update the color
+                if (Properties.getTheme() == Properties.Theme.Rainbow) Properties.changeColor();
+
+                repaint();
+            }).start();
         }
 
         @Override
@@ -71,48 +192,164 @@ public class Window extends JFrame {
                 Toolkit.getDefaultToolkit().sync();
             }
 
+            BoardView board = frame;
             setBackground(Properties.backgroundColor);
-            gameBoard.paint(graphics);
+            // The bands are painted in parallel off screen, then copied in one blit.
+            graphics.drawImage(renderer.render(gameBoard, board), 0, 0, null);
+
+            // No new snapshot is handed over until frameRequested is set, so this input belongs to it.
+            if (frameInput != 0) {
+                latency.presented(frameInput, frameTick);
+                frameInput = 0;
+            }
+            updateTitle(board.getScore());
+            frameRequested = true;
+        }
+
+        /**
+         * Doubles or halves the speed, between 1x and MAX_SPEED.
+         * @param faster    true to double the speed
+         */
+        private void changeSpeed (boolean faster) {
+            if (client != null) return; // The server sets the pace.
+            speed = faster ? Math.min(speed * 2, Properties.MAX_SPEED) : Math.max(speed / 2, 1);
+            titleScore = -1;
+        }
+
+        private void toggleTurbo () {
+            if (client != null) return;
+            turbo = !turbo;
+            titleScore = -1;
+        }
+
+        private void toggleLatency () {
+            showLatency = !showLatency;
+            titleScore = -1;
+        }
+
+        private void updateTitle (int score) {
+            long now = System.nanoTime();
+            boolean refreshLatency = showLatency && now - titleTime > 1_000_000_000L;
+            if (score == titleScore && !refreshLatency) return;
+            titleScore = score;
+            titleTime = now;
+            String pace = turbo ? " - Turbo" : speed > 1 ? " - " + speed + "x" : "";
+            String lag = showLatency ? " - " + latency : "";
+            setTitle("Snake - Score: " + score + pace + lag);
+        }
+
+        /**
+         * Forgets key presses that have not been painted yet, after the board
+         * jumped to another game or tick. The next frame the EDT asks for
+         * shows the new board.
+         */
+        private void discardInput () {
+            latency.takePending();
+            unpublishedInput = 0;
         }
 
         public void run () {
 
             long lastTime = System.nanoTime();
             double elapsedTime = 0.0;
-            double FPS = 15.0;
+            boolean gameOverShown = false;
 
             // Game loop.
             while (true) {
 
+                // The board is only ever reset from this thread, between ticks.
+                if (restartRequested && client != null) {
+                    restartRequested = false;
+                    client.restart(); // The dialog stays closed until the new game arrives.
+                } else if (restartRequested) {
+                    restartRequested = false;
+                    gameBoard.reset();
+                    gameOverShown = false;
+                    elapsedTime = 0.0;
+                    lastTime = System.nanoTime();
+                    discardInput();
+                }
+
+                if (rewindRequested > 0 && client != null) {
+                    rewindRequested = 0; // Only the server could rewind.
+                } else if (rewindRequested > 0) {
+                    boolean rewound = gameBoard.rewind(rewindRequested);
+                    rewindRequested = 0;
+                    // If the board is still over, for example with nothing left to rewind to, the dialog comes back.
+                    gameOverShown = false;
+                    if (rewound) {
+                        elapsedTime = 0.0;
+                        lastTime = System.nanoTime();
+                        discardInput();
+                    }
+                }
+
                 long now = System.nanoTime();
-                elapsedTime += ((now - lastTime) / 1_000_000_000.0) * FPS;
-                lastTime = System.nanoTime();
-
-                if (elapsedTime >= 1) {
-                    gameBoard.update();
-                    setTitle("Snake - Score: " + gameBoard.getScore());
-                    elapsedTime--;
-                    
+                if (gameBoard.isGameOver() && client == null) {
+                    elapsedTime = 0.0; // No ticks run until a restart, so there is nothing to catch up on.
+                } else {
+                    elapsedTime += ((now - lastTime) / 1_000_000_000.0) * Properties.TICKS_PER_SECOND * speed;
                 }
+                lastTime = now;
 
-                sleep();
-                
-                //7/28/2017
-                //If the rainbow theme is selected lets update the color
-                if (Properties.getTheme() == Properties.Theme.Rainbow) Properties.changeColor();
-                
-                repaint();
+                // Catch up on missed ticks, but drop the backlog if the game cannot keep up.
+                int ticks = turbo ? 1 : (int) elapsedTime;
+                if (!turbo && ticks > Properties.MAX_SPEED) {
+                    ticks = Properties.MAX_SPEED;
+                    elapsedTime = ticks;
+                }
+
+                // A client keeps ticking after the game ends, to pick up the next one.
+                for (int i = 0; i < ticks && (client != null || !gameBoard.isGameOver()); i++) {
+                    if (bot != null && !gameBoard.isGameOver()) {
+                        Direction direction = bot.decide(gameBoard.botView(), gameBoard.getMovement());
+                        if (client != null) client.steer(direction);
+                        else gameBoard.setDirection(direction);
+                    }
+                    long input = latency.takePending();
+                    if (input != 0 && unpublishedInput == 0) {
+                        unpublishedInput = input;
+                        unpublishedTick = System.nanoTime();
+                    }
+                    if (client != null) client.tick();
+                    else gameBoard.update();
+                    if (!turbo) elapsedTime--;
+                }
+                if (turbo) elapsedTime = 0.0;
+                if (client != null && !gameBoard.isGameOver()) gameOverShown = false;
+
+                // Only copy the board when the last copy has been painted.
+                if (frameRequested) {
+                    frameRequested = false;
+                    frameInput = unpublishedInput;
+                    frameTick = unpublishedTick;
+                    unpublishedInput = 0;
+                    frame = gameBoard.view();
+                }
+
+                // Show the dialog on the EDT so the game loop never blocks on it.
+                if (gameBoard.isGameOver() && !gameOverShown) {
+                    gameOverShown = true;
+                    String botStats = bot != null ? bot.toString() : null; // Read here, where the Bot runs.
+                    SwingUtilities.invokeLater(() -> gameOverDialog(botStats));
+                }
+
+                if (turbo && !gameBoard.isGameOver()) continue;
+
+                // Wake up in time for the next tick, and at least every 10 ms to hand over frames.
+                double ticksPerMilli = Properties.TICKS_PER_SECOND * speed / 1000.0;
+                sleep(Math.max(1, Math.min(10, (long) ((1 - elapsedTime) / ticksPerMilli))));
             }
         }
 
     }
 
     /**
-     * Sleep for 10 milliseconds.
+     * Sleep for the specified number of milliseconds.
      */
-    private void sleep () {
+    private void sleep (long millis) {
         try {
-            Thread.sleep(10);
+            Thread.sleep(millis);
         } catch (InterruptedException ex) {
             ex.printStackTrace();
         }
@@ -123,12 +360,20 @@ public class Window extends JFrame {
         @Override
         public void keyPressed(KeyEvent keyEvent) {
 
-            if (!engine.running && keyEvent.getKeyCode() != KeyEvent.VK_F1 && keyEvent.getKeyCode() != KeyEvent.VK_F2 && keyEvent.getKeyCode() != KeyEvent.VK_F3 && keyEvent.getKeyCode() != KeyEvent.VK_F4 && keyEvent.getKeyCode() != KeyEvent.VK_F5) {
+            boolean arrow = keyEvent.getKeyCode() == KeyEvent.VK_LEFT || keyEvent.getKeyCode() == KeyEvent.VK_RIGHT
+                    || keyEvent.getKeyCode() == KeyEvent.VK_UP || keyEvent.getKeyCode() == KeyEvent.VK_DOWN;
+            boolean measure = arrow && engine.running; // The key that starts the game is not measured.
+
+            if (!engine.running && keyEvent.getKeyCode() != KeyEvent.VK_F1 && keyEvent.getKeyCode() != KeyEvent.VK_F2 && keyEvent.getKeyCode() != KeyEvent.VK_F3 && keyEvent.getKeyCode() != KeyEvent.VK_F4 && keyEvent.getKeyCode() != KeyEvent.VK_F5 && keyEvent.getKeyCode() != KeyEvent.VK_F12) {
                 startGame(engine);
                 engine.running = true;
             }
 
-            if (keyEvent.getKeyCode() == KeyEvent.VK_LEFT) {
+            if (client != null && arrow) {
+                client.steer(keyEvent.getKeyCode() == KeyEvent.VK_LEFT ? Direction.LEFT
+                        : keyEvent.getKeyCode() == KeyEvent.VK_RIGHT ? Direction.RIGHT
+                        : keyEvent.getKeyCode() == KeyEvent.VK_UP ? Direction.UP : Direction.DOWN);
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_LEFT) {
                 engine.gameBoard.directionLeft();
             } else if (keyEvent.getKeyCode() == KeyEvent.VK_RIGHT) {
                 engine.gameBoard.directionRight();
@@ -136,6 +381,21 @@ public class Window extends JFrame {
                 engine.gameBoard.directionUp();
             } else if (keyEvent.getKeyCode() == KeyEvent.VK_DOWN) {
                 engine.gameBoard.directionDown();
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+                engine.rewindRequested = Properties.REWIND_STEP;
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_EQUALS || keyEvent.getKeyCode() == KeyEvent.VK_ADD) {
+                engine.changeSpeed(true);
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_MINUS || keyEvent.getKeyCode() == KeyEvent.VK_SUBTRACT) {
+                engine.changeSpeed(false);
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_T) {
+                engine.toggleTurbo();
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_F12) {
+                engine.toggleLatency();
+            }
+
+            // Stamped after the direction is set, so a tick can never take the stamp before the key.
+            if (measure) {
+                latency.keyPressed(keyEvent);
             }
 
             if (keyEvent.getKeyCode() == KeyEvent.VK_F1) {
@@ -162,29 +422,67 @@ public class Window extends JFrame {
 
     }
     
-    public void gameOverDialog() {
+    /**
+     * Shows the final score, and how the bot kept to its time budget if one
+     * was playing. "Play Again" asks the game loop to reset the board in place
+     * and "Rewind" to go back a few seconds; "Quit" or closing the dialog
+     * exits the program.
+     * @param botStats  the bot's latency numbers, or null if there is no bot
+     */
+    public void gameOverDialog(String botStats) {
     	JDialog gameOver = new JDialog(this, "Game Over", true);
-		gameOver.setSize(150, 100);
+		gameOver.setSize(300, 100);
 		gameOver.setLocationRelativeTo(null);
 		setDefaultCloseOperation(Window.EXIT_ON_CLOSE);
 
 		String score = String.valueOf(gameBoard.getScore());
 		JLabel finalScoreLabel = new JLabel("Final score is: " + score);
 		gameOver.getContentPane().add(finalScoreLabel, BorderLayout.CENTER);
-		JButton closeButton = new JButton("OK");
+		if (botStats != null) {
+			gameOver.getContentPane().add(new JLabel(botStats), BorderLayout.NORTH);
+		}
+		JButton playAgainButton = new JButton("Play Again");
+		JButton rewindButton = new JButton("Rewind");
+		JButton closeButton = new JButton("Quit");
 		
-		closeButton.addActionListener(new ActionListener() {
+		playAgainButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				engine.restartRequested = true;
+				gameOver.dispose();
+			}
+		});
+
+		rewindButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
+				engine.rewindRequested = Properties.REWIND_STEP;
 				gameOver.dispose();
 			}
 		});
+
+		closeButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				System.exit(0);
+			}
+		});
 		
-		gameOver.getContentPane().add(closeButton, BorderLayout.SOUTH);
-		gameOver.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		JPanel buttons = new JPanel();
+		buttons.add(playAgainButton);
+		buttons.add(rewindButton);
+		buttons.add(closeButton);
+		gameOver.getContentPane().add(buttons, BorderLayout.SOUTH);
+		gameOver.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+		gameOver.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				System.exit(0);
+			}
+		});
+		if (botStats != null) {
+			gameOver.pack(); // Wide enough for the bot's numbers.
+			gameOver.setLocationRelativeTo(null);
+		}
 
 		gameOver.setVisible(true);
-		
-		System.exit(0);
     }
 
     public static void main(String[] args) {